@@ -0,0 +1,76 @@
+package GameLogic;
+
+import Agents.Agent;
+import Agents.DoveAgent;
+import Tiles.TilePattern;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks births and deaths: spawnAgents when every agent can breed, and killDepletedAgents when half the
+ * population starves at once, at varying grid sizes and populations
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 50)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PopulationBenchmark {
+
+    @Param({"256", "1024"})
+    int worldSize;
+
+    @Param({"1000", "100000"})
+    int population;
+
+    GridWorld gridWorld;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        gridWorld = new GridWorld(worldSize, worldSize);
+        gridWorld.setSeed(42);
+        gridWorld.generateWorld(TilePattern.OPEN_FIELD);
+    }
+
+    // Bring the population back to exactly its starting size, then set everyone's food for the next measurement
+    private void resetPopulation(int everyoneFood, int halfFood) {
+        for (int i = population; i < gridWorld.agents.size(); i++)
+            gridWorld.agents.get(i).food = 0;
+        gridWorld.killDepletedAgents();
+        while (gridWorld.agents.size() < population)
+            gridWorld.addAgent(new DoveAgent(gridWorld.getWalkableTile(), "Agent"));
+
+        for (int i = 0; i < gridWorld.agents.size(); i++) {
+            Agent agent = gridWorld.agents.get(i);
+            agent.food = i % 2 == 0 ? everyoneFood : halfFood;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class DieOff {
+        @Setup(Level.Invocation)
+        public void setUp(PopulationBenchmark benchmark) {
+            benchmark.resetPopulation(1, 0);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class BabyBoom {
+        @Setup(Level.Invocation)
+        public void setUp(PopulationBenchmark benchmark) {
+            benchmark.resetPopulation(benchmark.gridWorld.SPAWN_THRESHOLD, benchmark.gridWorld.SPAWN_THRESHOLD);
+        }
+    }
+
+    @Benchmark
+    public void killDepletedAgents(DieOff dieOff) {
+        gridWorld.killDepletedAgents();
+    }
+
+    @Benchmark
+    public void spawnAgents(BabyBoom babyBoom) {
+        gridWorld.spawnAgents();
+    }
+}
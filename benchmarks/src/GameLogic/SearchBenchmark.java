@@ -0,0 +1,67 @@
+package GameLogic;
+
+import Agents.Agent;
+import Agents.DoveAgent;
+import Tiles.TilePattern;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks an agent's depth-limited BFS for food at different search depths (DFSlimit)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+    @Param({"5", "20", "80"})
+    int depth;
+
+    @Param({"0.001", "0.05"})
+    double foodDensity;
+
+    GridWorld gridWorld;
+    int[] starts;               // walkable tiles to search from, cycled through so results aren't all the same
+    Agent[] agents;             // an agent on each start tile
+    int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        gridWorld = new GridWorld(512, 512);
+        gridWorld.setSeed(42);
+        gridWorld.generateWorld(TilePattern.RANDOM_SPARSE);
+        gridWorld.seedFood(foodDensity);
+
+        starts = new int[1024];
+        agents = new Agent[starts.length];
+        for (int i = 0; i < starts.length; i++) {
+            Position start = gridWorld.getWalkableTile();
+            starts[i] = gridWorld.tiles.index(start.x, start.y);
+            agents[i] = new DoveAgent(start, "Searcher" + i);
+            agents[i].random = RandomStream.forKey(42, i);     // as the world would give it, without adding it
+        }
+    }
+
+    // The BFS itself, on the current thread's reusable workspace
+    @Benchmark
+    public int search() {
+        next = (next + 1) & (starts.length - 1);
+        return SearchWorkspace.get().search(gridWorld.tiles, starts[next], depth);
+    }
+
+    // An agent's whole food search, including choosing a random move if nothing is found. Goals are forgotten first,
+    // so every call searches from scratch
+    @Benchmark
+    public void searchForFood(Blackhole blackhole) {
+        next = (next + 1) & (agents.length - 1);
+        Agent agent = agents[next];
+        agent.goal = Agent.NO_GOAL;
+        agent.searchForFood(gridWorld.tiles, depth);
+        blackhole.consume(agent.goal);
+    }
+}
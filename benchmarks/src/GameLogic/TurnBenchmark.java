@@ -0,0 +1,48 @@
+package GameLogic;
+
+import Tiles.TilePattern;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks moving every agent one step, at varying grid sizes and populations, with and without a bitboard
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TurnBenchmark {
+
+    @Param({"64", "256", "1024"})
+    int worldSize;
+
+    @Param({"100", "10000"})
+    int population;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    @Param({"false", "true"})
+    boolean bitboard;
+
+    GridWorld gridWorld;
+
+    // Start each iteration from a fresh world, so food eaten in one iteration doesn't change the next
+    @Setup(Level.Iteration)
+    public void setUp() {
+        gridWorld = new GridWorld(worldSize, worldSize);
+        gridWorld.setSeed(42);
+        gridWorld.parallelAgentSteps = parallel;
+        gridWorld.bitboardMode = bitboard;
+        HeadlessRunner runner = new HeadlessRunner(gridWorld);
+        runner.newGame(TilePattern.RANDOM_SPARSE, population / 2, population / 2, 0.05);
+    }
+
+    @Benchmark
+    public void moveAgents() {
+        gridWorld.moveAgents();
+    }
+}
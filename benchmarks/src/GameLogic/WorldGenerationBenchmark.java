@@ -0,0 +1,37 @@
+package GameLogic;
+
+import Tiles.TilePattern;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks generating a world for each TilePattern at varying grid sizes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorldGenerationBenchmark {
+
+    @Param({"64", "512", "2048"})
+    int worldSize;
+
+    @Param({"OPEN_FIELD", "RANDOM_SPARSE", "RANDOM_DENSE", "CORRIDORS"})
+    TilePattern pattern;
+
+    GridWorld gridWorld;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        gridWorld = new GridWorld(worldSize, worldSize);
+        gridWorld.setSeed(42);
+    }
+
+    @Benchmark
+    public void generateWorld() {
+        gridWorld.generateWorld(pattern);
+    }
+}
@@ -1,38 +1,50 @@
 package Agents;
 
-import GameLogic.GridWorld;
+import GameLogic.FoodDistanceField;
 import GameLogic.Position;
-import GameLogic.SearchNode;
-import Tiles.Tile;
-import javafx.geometry.Pos;
+import GameLogic.RandomStream;
+import GameLogic.SearchWorkspace;
+import GameLogic.SnapshotInput;
+import GameLogic.SnapshotOutput;
+import Tiles.Bitboard;
+import Tiles.TileGrid;
 
-import java.util.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Abstract class for agents which navigate navigate the environment
  */
 public abstract class Agent {
 
+    public static final int NO_GOAL = -1;
+
     // Strategy, starting position etc
-    String name;
+    public int id;                      // unique within a world, assigned in the order agents enter it
+    public int parent_id = -1;          // id of the agent that spawned this one, or -1 for an original agent
+    public long birth_turn;             // turn on which the agent entered the world
+    String name;                        // shared with every descendant; the world's Lineage tells them apart
+    final int strategy;                 // StrategyRegistry number of the strategy this agent plays in games
     public Position position;
     private Position last_pos = null;   // previous position agent was at. Prefers spawning here, and not re-visiting
-    private Position next_pos = null;
-    public int food;
+    private int next_cell = -1;
+    public int food;                    // given a starting amount when added to a world
     private int steps_taken;            // way to keep track how long an agent has survived
     private int children_spawned;
 
-    public SearchNode goal;              // identified food, currently aiming to collect
-    private HashMap<Agent, ArrayList<Boolean>> pastEncounters;      // remember outcomes of past encounters with agents
-    private Random r = new Random();
+    public int goal = NO_GOAL;          // tile of identified food, currently aiming to collect
+    private long[] path = new long[1];  // moves on the route to the goal, 2 bits each (see SearchWorkspace.tracePath)
+    private int path_length = 0;        // number of moves on the route
+    private int path_step = 0;          // moves along the route taken so far
+    private int path_cell = -1;         // tile the route has reached after path_step moves
+    public RandomStream random;         // the agent's own seeded stream, given to it by the world it's added to
 
-    Agent(Position spawnLocation, String name) {
+    Agent(Position spawnLocation, String name, int strategy) {
         this.position = spawnLocation;
-        this.food = GridWorld.STARTING_FOOD;
+        this.strategy = strategy;
         this.steps_taken = 0;
         this.children_spawned = 0;
         this.name = name;
-        this.pastEncounters = new HashMap<>();
     }
 
     /**
@@ -47,127 +59,174 @@ public abstract class Agent {
      * If no food found in the search, randomly picks a tile to move to, or stays put, with a bias against returning
      * to whatever tile it was previously at
      *
-     * @param tiles an (M*N) array of Tile objects, one of which will contain the current agent
+     * Uses the current thread's SearchWorkspace, so doesn't allocate anything
+     *
+     * @param tiles the grid of world tiles, one of which will contain the current agent
      * @param max_depth the max search depth to continue BFS to
      */
-    public void searchForFood(Tile[][] tiles, int max_depth) {
-        Position[] adjacentPositions = getAdjacentPositions(this.position);
-        ArrayList<Position> adjacentFood = new ArrayList<>();
+    public void searchForFood(TileGrid tiles, int max_depth) {
+        SearchWorkspace workspace = SearchWorkspace.get();
+        int[] adjacentFood = workspace.candidates;
+        int adjacentFoodCount = 0;
+        int cell = tiles.index(position.x, position.y);
 
-        for (Position pos : adjacentPositions) {
-            if (tiles[pos.x][pos.y].walkable() && tiles[pos.x][pos.y].hasFood())
-                adjacentFood.add(pos);
+        // with a bitboard, most agents can tell from one bit that there's no food next to them
+        Bitboard bits = tiles.bitboard();
+        if (bits == null) {
+            for (int m = tiles.neighbours(cell); m != 0; m &= m - 1) {
+                int adjacent = tiles.adjacent(cell, Integer.numberOfTrailingZeros(m));
+                if (tiles.hasFood(adjacent))
+                    adjacentFood[adjacentFoodCount++] = adjacent;
+            }
+        } else if (bits.nearFood(cell)) {
+            for (int m = bits.foodNeighbours(cell); m != 0; m &= m - 1)
+                adjacentFood[adjacentFoodCount++] = tiles.adjacent(cell, Integer.numberOfTrailingZeros(m));
         }
 
         // If any adjacent square has food, move to one randomly
-        if (adjacentFood.size() > 0) {
-            int choice = r.nextInt(adjacentFood.size());
-            next_pos = adjacentFood.get(choice);
+        if (adjacentFoodCount > 0) {
+            int choice = random.nextInt(adjacentFoodCount);
+            next_cell = adjacentFood[choice];
             // if no adjacent food, check if there's still food at the goal and if so move towards it
-        } else if (goal != null) {
-            if (goal.tile.hasFood()) {
-                next_pos = findNextTilePos(goal, tiles, max_depth);
+        } else if (goal != NO_GOAL) {
+            if (tiles.hasFood(goal)) {
+                next_cell = findNextTile(tiles, cell);
                 // If not, DL-BFS to try to find food
             } else {
-                goal = null;
-                DL_BFS(tiles, max_depth);
+                goal = NO_GOAL;
+                DL_BFS(tiles, cell, max_depth, workspace);
             }
             // No adjacent food and no goal - DL-BFS to try to find
         } else
-            DL_BFS(tiles, max_depth);
+            DL_BFS(tiles, cell, max_depth, workspace);
     }
 
     // Depth-limited BFS to try to find a nearby food
-    private void DL_BFS(Tile[][] tiles, int max_depth) {
-        Position[] adjacentPositions;
-        HashMap<Position, SearchNode> discovered = new HashMap<>();             // remember visited tiles
-        LinkedList<SearchNode> queue = new LinkedList<>();                      // FIFO queue
-        queue.add(new SearchNode(tiles[position.x][position.y], null, 0));
-
-        boolean goalFound = false;
-        while (!(queue.isEmpty() || goalFound)) {
-            SearchNode node = queue.poll();
-            if (node.tile.hasFood()) {
-                goal = node;
-                next_pos = findNextTilePos(goal, tiles, max_depth);
-                goalFound = true;
-            } else {
-                adjacentPositions = getAdjacentPositions(node.tile.position);
-                for (Position pos : adjacentPositions) {
-                    // ignore edge board tiles, which will be walls
-                    if (pos.x < 1 || pos.x > tiles.length - 2 || pos.y < 1 || pos.y > tiles.length - 2)
-                        continue;
-                    // successors must be previously undiscovered, walkable, and within the max search depth
-                    if (!discovered.containsKey(tiles[pos.x][pos.y].position) && tiles[pos.x][pos.y].walkable()
-                            && node.depth < max_depth) {
-                        SearchNode newNode = new SearchNode(tiles[pos.x][pos.y], node, node.depth + 1);
-                        discovered.put(tiles[pos.x][pos.y].position, newNode);
-                        queue.add(newNode);
-                    }
-                }
-            }
+    private void DL_BFS(TileGrid tiles, int cell, int max_depth, SearchWorkspace workspace) {
+        int found = workspace.search(tiles, cell, max_depth);
+        if (found != -1) {
+            if (path.length * 32 < max_depth)
+                path = new long[(max_depth + 31) >>> 5];
+            path_length = workspace.tracePath(tiles, found, path);
+            path_step = 0;
+            path_cell = cell;
+            goal = found;
+            next_cell = findNextTile(tiles, cell);
+            return;
         }
 
         // No food found nearby; choose a random move
-        if (!goalFound) {
-            adjacentPositions = getAdjacentPositions(this.position);
-            ArrayList<Position> adjacentWalkables = new ArrayList<>();
-            for (Position pos : adjacentPositions) {
-                if (tiles[pos.x][pos.y].walkable())
-                    adjacentWalkables.add(pos);
-            }
-
-            int choice;
-            if (adjacentWalkables.size() > 0) {         // Possible there are no valid moves from current position
-                choice = r.nextInt(adjacentWalkables.size());
-                // re-roll once if select previous tile. Puts bias against going backwards though still allows
-                if (adjacentWalkables.get(choice).equals(last_pos))
-                    choice = r.nextInt(adjacentWalkables.size());
-                next_pos = adjacentWalkables.get(choice);
-            } else {                                    // no adjacent walkable tiles from current position
-                next_pos = position;
-            }
+        moveRandomly(tiles, cell, workspace);
+    }
 
+    // Randomly pick an adjacent tile to move to, with a bias against returning to the previous tile
+    private void moveRandomly(TileGrid tiles, int cell, SearchWorkspace workspace) {
+        int[] adjacentWalkables = workspace.candidates;
+        int adjacentWalkableCount = 0;
+        for (int m = tiles.neighbours(cell); m != 0; m &= m - 1)
+            adjacentWalkables[adjacentWalkableCount++] = tiles.adjacent(cell, Integer.numberOfTrailingZeros(m));
 
+        int last_cell = last_pos != null ? tiles.index(last_pos.x, last_pos.y) : -1;
+        int choice;
+        if (adjacentWalkableCount > 0) {            // Possible there are no valid moves from current position
+            choice = random.nextInt(adjacentWalkableCount);
+            // re-roll once if select previous tile. Puts bias against going backwards though still allows
+            if (adjacentWalkables[choice] == last_cell)
+                choice = random.nextInt(adjacentWalkableCount);
+            next_cell = adjacentWalkables[choice];
+        } else {                                    // no adjacent walkable tiles from current position
+            next_cell = cell;
         }
     }
 
-    //  Helper function to get adjacent positions to a given position
-    private Position[] getAdjacentPositions(Position pos) {
+    /**
+     * Alternative to searchForFood: step to whichever adjacent tile is closest to food according to a shared distance
+     * field, picking randomly between equally close tiles. If no food is reachable, moves randomly as searchForFood does
+     *
+     * @param tiles the grid of world tiles, one of which will contain the current agent
+     * @param field distances from every tile to its nearest food
+     */
+    public void followFoodField(TileGrid tiles, FoodDistanceField field) {
+        SearchWorkspace workspace = SearchWorkspace.get();
+        int[] closest = workspace.candidates;
+        int closestCount = 0;
+        int cell = tiles.index(position.x, position.y);
+        int closestDistance = FoodDistanceField.UNREACHABLE;
+
+        for (int m = tiles.neighbours(cell); m != 0; m &= m - 1) {
+            int adjacent = tiles.adjacent(cell, Integer.numberOfTrailingZeros(m));
+            int distance = field.distance(adjacent);
+            if (distance < closestDistance) {
+                closestDistance = distance;
+                closestCount = 0;
+            }
+            if (distance == closestDistance && distance != FoodDistanceField.UNREACHABLE)
+                closest[closestCount++] = adjacent;
+        }
 
-        return new Position[] {new Position(pos.x + 1, pos.y), new Position(pos.x - 1, pos.y),
-                new Position(pos.x, pos.y - 1), new Position(pos.x, pos.y + 1)};
+        goal = NO_GOAL;
+        if (closestCount > 0)
+            next_cell = closest[random.nextInt(closestCount)];
+        else
+            moveRandomly(tiles, cell, workspace);
     }
 
-    // Helper function to take a SearchNode and finds the next Tile in the path
-    private Position findNextTilePos(SearchNode node, Tile[][] tiles, int max_depth) {
-        while (Math.abs(position.x - node.tile.position.x) + Math.abs(position.y - node.tile.position.y) != 1) {
-            if (node.parent != null)
-                node = node.parent;
-            else {
-                // Have strayed off path
-                goal = null;
-                // Get puzzled for a turn if food gets stolen by another agent
-                return this.position;
+    // The tile a move along the path to the goal leads to
+    private int pathStep(TileGrid tiles, int from, int move) {
+        return tiles.adjacent(from, (int) (path[move >>> 5] >>> ((move & 31) << 1)) & 3);
+    }
+
+    /**
+     * Helper function to find the next tile to step onto along the path to the goal. The path is followed from where
+     * the agent got to last turn, so staying on it costs nothing however long it is. If the agent has strayed off it,
+     * e.g. to eat food next to it, the path is repaired by rejoining it at the furthest tile along that's adjacent
+     */
+    private int findNextTile(TileGrid tiles, int cell) {
+        // took the step planned last turn
+        if (path_step < path_length && cell == pathStep(tiles, path_cell, path_step)) {
+            path_cell = cell;
+            path_step++;
+        }
+        if (cell == path_cell && path_step < path_length)
+            return pathStep(tiles, path_cell, path_step);
+
+        int x = tiles.x(cell);
+        int y = tiles.y(cell);
+        int rejoin = -1, rejoinStep = -1;
+        for (int i = path_step, at = path_cell; i <= path_length; i++) {
+            if (Math.abs(x - tiles.x(at)) + Math.abs(y - tiles.y(at)) == 1) {
+                rejoin = at;
+                rejoinStep = i;
             }
+            if (i < path_length)
+                at = pathStep(tiles, at, i);
         }
-        return node.tile.position;
+        if (rejoin != -1) {
+            path_cell = rejoin;
+            path_step = rejoinStep;
+            return rejoin;
+        }
+        // Have strayed off path
+        goal = NO_GOAL;
+        // Get puzzled for a turn if food gets stolen by another agent
+        return cell;
     }
 
-    // Move to next square
-    public void move() {
-        if (!next_pos.equals(position)) {
+    // Move to next square, losing 1 food every stepsToLoseFood steps
+    public void move(TileGrid tiles, int stepsToLoseFood) {
+        int cell = tiles.index(position.x, position.y);
+        if (next_cell != cell) {
             last_pos = position;
-            position = next_pos;
-            next_pos = null;
+            position = new Position(tiles.x(next_cell), tiles.y(next_cell));
             steps_taken += 1;
-            if (steps_taken % GridWorld.STEPS_TO_LOSE_FOOD == 0) {
+            if (steps_taken % stepsToLoseFood == 0) {
                 this.lose_food(1);
             }
         }
+        next_cell = -1;
         // if goal's food is gone (whether or not this agent took it), can forget goal
-        if (goal != null && !goal.tile.hasFood())
-            goal = null;
+        if (goal != NO_GOAL && !tiles.hasFood(goal))
+            goal = NO_GOAL;
     }
 
     // If finding food uncontested or gaining some from a game
@@ -180,29 +239,26 @@ public abstract class Agent {
         this.food -= v;
     }
 
-    /**
-     * Abstract method that must be implemented to play a game. Agent received information about the opposing agent
-     * @param opposingAgent Another agent trying to claim the food on the same turn
-     * @return A Strategy move played by the Agent in this game
-     */
-    public Strategy playGame(Agent opposingAgent) {
-        return null;
+    // StrategyRegistry number of the strategy this agent plays
+    public int getStrategy() {
+        return strategy;
     }
 
     // Receive location to spawn a child if there is a free adjacent tile
-    Agent getChildSpawnLocation(Tile[][] tiles) {
+    Agent getChildSpawnLocation(TileGrid tiles) {
 
         Position spawnPos = null;
 
         // if previous position is vacant, choose that
-        if (last_pos != null && tiles[last_pos.x][last_pos.y].agents.size() == 0)
+        if (last_pos != null && tiles.agentCount(last_pos.x, last_pos.y) == 0)
             spawnPos = last_pos;
         else {
             // else, any adjacent vacant tile
-            Position[] adjacents = getAdjacentPositions(position);
-            for (Position pos : adjacents) {
-                if (tiles[last_pos.x][last_pos.y].agents.size() == 0)
-                    spawnPos = pos;
+            int cell = tiles.index(position.x, position.y);
+            for (int m = tiles.neighbours(cell); m != 0; m &= m - 1) {
+                int adjacent = tiles.adjacent(cell, Integer.numberOfTrailingZeros(m));
+                if (tiles.agentCount(adjacent) == 0)
+                    spawnPos = new Position(tiles.x(adjacent), tiles.y(adjacent));
             }
         }
 
@@ -213,15 +269,72 @@ public abstract class Agent {
             return spawnChild(spawnPos);
     }
 
-    // Spawn a child of same type as parent
+    // Spawn a child of same type and name as parent
     public abstract Agent spawnChild(Position spawnPos);
 
+    // Number of bytes writeTo() will write
+    public int snapshotSize() {
+        return 14 * Integer.BYTES + 3 * Long.BYTES + name.getBytes(StandardCharsets.UTF_8).length +
+                ((path_length + 31) >>> 5) * Long.BYTES;
+    }
+
+    // Save everything about this agent needed to carry on exactly where it left off, apart from its strategy
+    public void writeTo(SnapshotOutput out) throws IOException {
+        out.putInt(id);
+        out.putInt(parent_id);
+        out.putLong(birth_turn);
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        out.putInt(nameBytes.length);
+        out.put(nameBytes, 0, nameBytes.length);
+        out.putInt(position.x);
+        out.putInt(position.y);
+        out.putInt(last_pos != null ? last_pos.x : -1);
+        out.putInt(last_pos != null ? last_pos.y : -1);
+        out.putInt(food);
+        out.putInt(steps_taken);
+        out.putInt(children_spawned);
+        out.putInt(goal);
+        out.putInt(path_length);
+        out.putInt(path_step);
+        out.putInt(path_cell);
+        for (int i = 0; i < (path_length + 31) >>> 5; i++)
+            out.putLong(path[i]);
+        out.putRandom(random);
+    }
+
+    // Restore state saved by writeTo() into an agent of the same strategy
+    public void readFrom(SnapshotInput in) throws IOException {
+        id = in.getInt();
+        parent_id = in.getInt();
+        birth_turn = in.getLong();
+        byte[] nameBytes = new byte[in.getInt()];
+        in.get(nameBytes, 0, nameBytes.length);
+        name = new String(nameBytes, StandardCharsets.UTF_8);
+        position = new Position(in.getInt(), in.getInt());
+        int lastX = in.getInt();
+        int lastY = in.getInt();
+        last_pos = lastX != -1 ? new Position(lastX, lastY) : null;
+        food = in.getInt();
+        steps_taken = in.getInt();
+        children_spawned = in.getInt();
+        goal = in.getInt();
+        path_length = in.getInt();
+        path_step = in.getInt();
+        path_cell = in.getInt();
+        if (path.length * 32 < path_length)
+            path = new long[(path_length + 31) >>> 5];
+        for (int i = 0; i < (path_length + 31) >>> 5; i++)
+            path[i] = in.getLong();
+        random = in.getRandom();
+        next_cell = -1;
+    }
+
     @Override
     public String toString() {
-        String returnString = "Name: " + name + "\nAgent type: " + this.getClass() +
+        String returnString = "Name: " + name + "\nStrategy: " + StrategyRegistry.name(strategy) +
                 "\nPosition: " + position.getCoords() + "\nLast pos: " ;
         returnString = last_pos != null ? returnString + last_pos.getCoords() : returnString + "none";
-        returnString = goal != null ? returnString + "\nGoal: " + goal.tile.position.getCoords() : returnString + "\nGoal: none";
+        returnString = goal != NO_GOAL ? returnString + "\nGoal: tile " + goal : returnString + "\nGoal: none";
         returnString += "\nFood: " + food + "\nSteps: " + steps_taken + "\nChildren spawned: " + children_spawned + "\n";
 
         return returnString;
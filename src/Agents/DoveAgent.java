@@ -9,11 +9,11 @@ public class DoveAgent extends Agent {
 
     public DoveAgent(Position spawnLocation, String name) {
 
-        super(spawnLocation, name);
+        super(spawnLocation, name, StrategyRegistry.DOVE);
     }
 
     @Override
     public Agent spawnChild(Position spawnPos) {
-        return new DoveAgent(spawnPos, this.name + "_x");
+        return new DoveAgent(spawnPos, this.name);
     }
 }
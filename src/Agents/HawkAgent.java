@@ -8,11 +8,11 @@ import GameLogic.Position;
 public class HawkAgent extends Agent {
 
     public HawkAgent(Position spawnLocation, String name) {
-        super(spawnLocation, name);
+        super(spawnLocation, name, StrategyRegistry.HAWK);
     }
 
     @Override
     public Agent spawnChild(Position spawnPos) {
-        return new HawkAgent(spawnPos, this.name + "_x");
+        return new HawkAgent(spawnPos, this.name);
     }
 }
@@ -0,0 +1,152 @@
+package Agents;
+
+import GameLogic.Position;
+import GameLogic.RandomStream;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Every strategy agents can play, as data rather than code. A strategy is a table giving the chance of playing Hawk in
+ * each situation an agent can be in when it contests food, so deciding any agent's move is the same table lookup, and
+ * adding a strategy doesn't add another implementation for contests to dispatch between.
+ *
+ * A situation is a combination of the bits below: whether the agent owns the food (it was the goal it had been heading
+ * for, rather than a tile it stumbled on), and what it remembers of earlier encounters with the opponent: the
+ * opponent's moves, and its own last move and whether it won.
+ *
+ * A strategy only sees what happened in earlier contests, never the opponent's move in this one, so Maynard Smith's
+ * Retaliator (display, but escalate if the opponent escalates) can't be a table. Across contests it plays the same as
+ * Tit-for-Tat, answering a Hawk with a Hawk the next time they meet, so there's no separate row for it; Grudger is the
+ * strategy that never forgives.
+ *
+ * Strategies are numbered in the order they're registered; the built-in ones always have the same numbers. Strategies
+ * can be registered from any thread, but should be registered before any world using them starts running
+ */
+public final class StrategyRegistry {
+
+    // Situation bits
+    public static final int OWNER = 1;          // the contested food is the one this agent was heading for
+    public static final int MET = 2;            // this agent remembers meeting the opponent before
+    public static final int LAST_HAWK = 4;      // the opponent played Hawk the last time they met
+    public static final int EVER_HAWK = 8;      // the opponent has played Hawk against this agent, as far as it remembers
+    public static final int PLAYED_HAWK = 16;   // this agent played Hawk the last time they met
+    public static final int WON = 32;           // this agent won (gained food) the last time they met
+    public static final int SITUATIONS = 64;
+
+    // Built-in strategies
+    public static final int DOVE = 0;           // always shares
+    public static final int HAWK = 1;           // always fights
+    public static final int BOURGEOIS = 2;      // fights for food it owns, shares otherwise
+    public static final int GRUDGER = 3;        // shares, unless the opponent has ever fought it (as far as it remembers)
+    public static final int TIT_FOR_TAT = 4;    // shares the first time, then does whatever the opponent did last
+    public static final int PAVLOV = 5;         // shares the first time, then repeats its last move if it won, else switches
+
+    // Replaced wholesale on registering, names last, so a strategy is only visible once all of it is there
+    private static volatile String[] names = new String[0];
+    private static volatile int[] colours = new int[0];             // 0xRRGGBB to draw agents playing each strategy
+    private static volatile double[] hawkChance = new double[0];    // [strategy * SITUATIONS + situation]
+
+    static {
+        register("Dove", 0xADD8E6, situation -> 0);
+        register("Hawk", 0xDB7093, situation -> 1);
+        register("Bourgeois", 0x9370DB, situation -> (situation & OWNER) != 0 ? 1 : 0);
+        register("Grudger", 0xFF8C00, situation -> (situation & EVER_HAWK) != 0 ? 1 : 0);
+        register("Tit-for-Tat", 0xF5F5F5, situation -> (situation & LAST_HAWK) != 0 ? 1 : 0);
+        register("Pavlov", 0x3CB371, situation -> (situation & MET) != 0 &&
+                ((situation & WON) != 0) == ((situation & PLAYED_HAWK) != 0) ? 1 : 0);
+    }
+
+    private StrategyRegistry() { }
+
+    // Chance of playing Hawk in a situation, for filling in a strategy's table
+    public interface Rule {
+        double hawkChance(int situation);
+    }
+
+    /**
+     * Add a strategy, or find the one already registered with the same name
+     * @param colour 0xRRGGBB to draw agents playing it
+     * @param rule chance of playing Hawk in each situation, looked up once now to fill in the table
+     * @return the strategy's number
+     */
+    public static synchronized int register(String name, int colour, Rule rule) {
+        int existing = byName(name);
+        if (existing != -1)
+            return existing;
+        int strategy = names.length;
+        double[] table = Arrays.copyOf(hawkChance, (strategy + 1) * SITUATIONS);
+        for (int situation = 0; situation < SITUATIONS; situation++) {
+            double p = rule.hawkChance(situation);
+            if (!(p >= 0 && p <= 1))
+                throw new IllegalArgumentException("Chance of playing Hawk must be in [0, 1], not " + p);
+            table[strategy * SITUATIONS + situation] = p;
+        }
+        int[] newColours = Arrays.copyOf(colours, strategy + 1);
+        newColours[strategy] = colour;
+        String[] newNames = Arrays.copyOf(names, strategy + 1);
+        newNames[strategy] = name;
+        hawkChance = table;
+        colours = newColours;
+        names = newNames;
+        return strategy;
+    }
+
+    /**
+     * The mixed strategy that plays Hawk with a fixed probability whatever the situation, registering it if need be.
+     * The probability is rounded to the nearest thousandth, so there are at most 1001 mixed strategies however many
+     * values a sweep tries, and p = 0.1 + 0.2 is the same strategy as p = 0.3
+     */
+    public static int mixed(double p) {
+        if (!(p >= 0 && p <= 1))
+            throw new IllegalArgumentException("Chance of playing Hawk must be in [0, 1], not " + p);
+        double rounded = Math.round(p * 1000) / 1000.0;
+        int red = (int) Math.round(0xAD + rounded * (0xDB - 0xAD));
+        int green = (int) Math.round(0xD8 + rounded * (0x70 - 0xD8));
+        int blue = (int) Math.round(0xE6 + rounded * (0x93 - 0xE6));
+        return register(String.format(Locale.ROOT, "%.3f-Hawk", rounded), red << 16 | green << 8 | blue,
+                situation -> rounded);
+    }
+
+    // Number of strategies registered
+    public static int count() {
+        return names.length;
+    }
+
+    // The strategy registered with a name, or -1 if there isn't one
+    public static int byName(String name) {
+        for (int strategy = 0; strategy < names.length; strategy++)
+            if (names[strategy].equals(name))
+                return strategy;
+        return -1;
+    }
+
+    public static String name(int strategy) {
+        return names[strategy];
+    }
+
+    public static int colour(int strategy) {
+        return colours[strategy];
+    }
+
+    public static double hawkChance(int strategy, int situation) {
+        return hawkChance[strategy * SITUATIONS + situation];
+    }
+
+    /**
+     * The move a strategy plays in a situation. Only draws a random number for situations the strategy plays mixed
+     */
+    public static Strategy move(int strategy, int situation, RandomStream r) {
+        double p = hawkChance[strategy * SITUATIONS + situation];
+        return p >= 1 || (p > 0 && r.nextDouble() < p) ? Strategy.HAWK : Strategy.DOVE;
+    }
+
+    // A new agent playing a strategy
+    public static Agent create(int strategy, Position spawnLocation, String name) {
+        switch (strategy) {
+            case DOVE: return new DoveAgent(spawnLocation, name);
+            case HAWK: return new HawkAgent(spawnLocation, name);
+            default: return new TableAgent(spawnLocation, name, strategy);
+        }
+    }
+}
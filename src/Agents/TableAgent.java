@@ -0,0 +1,18 @@
+package Agents;
+
+import GameLogic.Position;
+
+/**
+ * An agent playing any strategy from the StrategyRegistry, for strategies without a class of their own
+ */
+public class TableAgent extends Agent {
+
+    public TableAgent(Position spawnLocation, String name, int strategy) {
+        super(spawnLocation, name, strategy);
+    }
+
+    @Override
+    public Agent spawnChild(Position spawnPos) {
+        return new TableAgent(spawnPos, this.name, strategy);
+    }
+}
@@ -0,0 +1,113 @@
+package GameLogic;
+
+import Agents.Agent;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+/**
+ * Dense store of all agents in play. Agents are packed into the front of one array, so births and deaths are both
+ * O(1): a new agent goes on the end, and a dead agent's slot is filled by moving the last agent into it.
+ *
+ * Because agents move between slots, a slot is only meaningful until the next removal. An agent's id is its stable
+ * handle, and can be turned back into its current slot with slotOf()
+ */
+public class AgentStore implements Iterable<Agent> {
+
+    private Agent[] agents = new Agent[16];
+    private int size = 0;
+    private int[] slotById = new int[16];       // current slot of each agent id, or -1 if not in the store
+
+    public AgentStore() {
+        Arrays.fill(slotById, -1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The agent currently in a slot, from 0 to size() - 1
+    public Agent get(int slot) {
+        return agents[slot];
+    }
+
+    // The slot an agent with the given id is currently in, or -1 if it isn't in the store
+    public int slotOf(int id) {
+        return id < slotById.length ? slotById[id] : -1;
+    }
+
+    public boolean contains(Agent agent) {
+        return slotOf(agent.id) != -1;
+    }
+
+    // Add an agent to the end of the store. Its id must already be set, and unique within the store
+    public void add(Agent agent) {
+        if (size == agents.length)
+            agents = Arrays.copyOf(agents, size * 2);
+        if (agent.id >= slotById.length) {
+            int oldLength = slotById.length;
+            slotById = Arrays.copyOf(slotById, Math.max(agent.id + 1, oldLength * 2));
+            Arrays.fill(slotById, oldLength, slotById.length, -1);
+        }
+        agents[size] = agent;
+        slotById[agent.id] = size;
+        size++;
+    }
+
+    // Remove the agent in a slot, moving the last agent into its place
+    public void removeAt(int slot) {
+        if (slot < 0 || slot >= size)
+            throw new IndexOutOfBoundsException("No agent in slot " + slot);
+        slotById[agents[slot].id] = -1;
+        size--;
+        if (slot != size) {
+            agents[slot] = agents[size];
+            slotById[agents[slot].id] = slot;
+        }
+        agents[size] = null;
+    }
+
+    public void remove(Agent agent) {
+        int slot = slotOf(agent.id);
+        if (slot == -1 || agents[slot] != agent)
+            throw new NoSuchElementException("Tried to remove an agent that isn't in play");
+        removeAt(slot);
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            slotById[agents[i].id] = -1;
+            agents[i] = null;
+        }
+        size = 0;
+    }
+
+    public Stream<Agent> stream() {
+        return Arrays.stream(agents, 0, size);
+    }
+
+    public Stream<Agent> parallelStream() {
+        return stream().parallel();
+    }
+
+    @Override
+    public Iterator<Agent> iterator() {
+        return new Iterator<Agent>() {
+            int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Agent next() {
+                if (next >= size)
+                    throw new NoSuchElementException();
+                return agents[next++];
+            }
+        };
+    }
+}
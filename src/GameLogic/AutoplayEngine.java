@@ -0,0 +1,146 @@
+package GameLogic;
+
+import Tiles.ChunkSet;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Plays a world's turns by itself on a background thread, at a fixed number of turns per second, so the simulation
+ * isn't held up by drawing and drawing isn't held up by the simulation.
+ *
+ * Turns are run on a fixed timestep: if the thread falls behind it runs the turns that are due back to back, up to a
+ * tenth of a second's worth, and drops the rest. After each batch of turns it hands the view a RenderFrame through a
+ * double buffer. A new frame is only captured once the view has taken the last one, so when drawing is slower than the
+ * simulation the turns in between are simply skipped on screen, and their changed chunks carried into the next frame.
+ *
+ * While the engine is running, only its thread may touch the world
+ */
+public class AutoplayEngine {
+
+    private final GridWorld world;
+    private final ChunkSet changes;             // chunks changed since the last frame was captured
+    private final double turnsPerSecond;        // or 0 to play as fast as possible
+    private final LongSupplier clock;           // nanoseconds, for timing turns
+
+    private final AtomicReference<RenderFrame> ready = new AtomicReference<>();    // captured, waiting to be drawn
+    private final AtomicReference<RenderFrame> spare = new AtomicReference<>();    // drawn, free to capture into
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * @param changes chunks the world's tiles have changed since the view last drew them, tracked on its tiles
+     * @param turnsPerSecond how fast to play, or 0 for as fast as possible
+     */
+    public AutoplayEngine(GridWorld world, ChunkSet changes, double turnsPerSecond) {
+        this(world, changes, turnsPerSecond, System::nanoTime);
+    }
+
+    /**
+     * An engine timing its turns by a clock other than System.nanoTime(), e.g. one a test moves on by hand
+     * @param clock current time in nanoseconds
+     */
+    public AutoplayEngine(GridWorld world, ChunkSet changes, double turnsPerSecond, LongSupplier clock) {
+        if (turnsPerSecond < 0)
+            throw new IllegalArgumentException("Turns per second can't be negative");
+        this.world = world;
+        this.changes = changes;
+        this.turnsPerSecond = turnsPerSecond;
+        this.clock = clock;
+    }
+
+    public synchronized void start() {
+        if (thread != null)
+            return;
+        running = true;
+        thread = new Thread(this::play, "autoplay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop playing, waiting for the turn in progress to finish. A frame of the last turn played is then available, taking
+     * in the changes of any frame the view hadn't taken yet
+     */
+    public synchronized void stop() {
+        if (thread == null)
+            return;
+        running = false;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        thread = null;
+
+        // turns played since the last frame would otherwise never be drawn
+        RenderFrame frame = ready.getAndSet(null);
+        if (frame != null) {
+            for (int i = 0; i < frame.chunkCount; i++)
+                changes.add(frame.chunks[i]);
+        } else {
+            frame = spare.getAndSet(null);
+            if (frame == null)
+                frame = new RenderFrame();
+        }
+        frame.capture(world, changes);
+        ready.set(frame);
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    public synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    // The newest frame not yet drawn, or null if there isn't one. Hand it back with recycle() once it's drawn
+    public RenderFrame latestFrame() {
+        return ready.getAndSet(null);
+    }
+
+    public void recycle(RenderFrame frame) {
+        spare.set(frame);
+    }
+
+    private void play() {
+        long step = turnsPerSecond == 0 ? 0 : (long) (1e9 / turnsPerSecond);
+        int maxCatchUp = Math.max(1, (int) (turnsPerSecond / 10));
+        long next = clock.getAsLong();
+        while (running) {
+            long now = clock.getAsLong();
+            if (step == 0) {
+                world.nextTurn();
+            } else {
+                if (now < next) {
+                    LockSupport.parkNanos(next - now);
+                    continue;
+                }
+                for (int turns = 0; next <= now && turns < maxCatchUp; turns++) {
+                    world.nextTurn();
+                    next += step;
+                }
+                if (next <= now)
+                    next = now + step;      // too far behind to catch up, so drop the backlog
+            }
+            publish();
+        }
+    }
+
+    // Capture a frame for the view, unless it still hasn't taken the last one
+    private void publish() {
+        if (ready.get() != null)
+            return;
+        RenderFrame frame = spare.getAndSet(null);
+        if (frame == null)
+            frame = new RenderFrame();
+        frame.capture(world, changes);
+        ready.set(frame);
+    }
+}
@@ -0,0 +1,64 @@
+package GameLogic;
+
+import javafx.collections.ObservableList;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+
+/**
+ * Reusable circles for a layer of the board whose contents change every turn, like agents or food.
+ *
+ * Each frame the circles are placed again in order between begin() and end(). The circle drawn in the same slot last
+ * frame is reused, and only the properties that differ are set, so an unchanged scene touches nothing and a changed
+ * one only what moved. Circles not needed this frame are hidden rather than removed, and only trimmed once most of
+ * them are spare
+ */
+class CirclePool {
+
+    private final Group group;
+    private int used = 0;       // circles placed so far this frame
+
+    CirclePool(Group group) {
+        this.group = group;
+    }
+
+    void begin() {
+        used = 0;
+    }
+
+    void place(double x, double y, double radius, Color colour) {
+        ObservableList<Node> circles = group.getChildren();
+        Circle circle;
+        if (used < circles.size()) {
+            circle = (Circle) circles.get(used);
+            if (circle.getCenterX() != x)
+                circle.setCenterX(x);
+            if (circle.getCenterY() != y)
+                circle.setCenterY(y);
+            if (circle.getRadius() != radius)
+                circle.setRadius(radius);
+            if (circle.getFill() != colour)
+                circle.setFill(colour);
+            if (!circle.isVisible())
+                circle.setVisible(true);
+        } else {
+            circle = new Circle(x, y, radius, colour);
+            circles.add(circle);
+        }
+        used++;
+    }
+
+    void end() {
+        ObservableList<Node> circles = group.getChildren();
+        if (used < circles.size() / 4) {
+            circles.remove(used, circles.size());
+            return;
+        }
+        for (int i = used; i < circles.size(); i++) {
+            Node circle = circles.get(i);
+            if (circle.isVisible())
+                circle.setVisible(false);
+        }
+    }
+}
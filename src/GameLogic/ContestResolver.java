@@ -0,0 +1,89 @@
+package GameLogic;
+
+import Agents.Strategy;
+
+import java.util.Arrays;
+
+/**
+ * Collects every food contest that happens during a turn, then settles them all in a single pass over the payoff
+ * matrix. With food value v and cost of losing a fight c, payoffs to (row, column) agents are:
+ *
+ *          Hawk                Dove
+ * Hawk     (v-c)/2, (v-c)/2    v, 0
+ * Dove     0, v                v/2, v/2
+ *
+ * Food is counted in whole units, so halved payoffs are rounded toward zero. Alternatively, Hawk-Hawk games can be
+ * randomised so one agent wins v and the other loses c
+ */
+class ContestResolver {
+
+    // One entry per contest, in the order they were added
+    int count = 0;
+    int[] cells = new int[16];          // tile of the contested food
+    int[] agentA = new int[16];         // index into the world's agents of each contestant
+    int[] agentB = new int[16];
+    byte[] moveA = new byte[16];        // Strategy ordinal each contestant played
+    byte[] moveB = new byte[16];
+    int[] payoffA = new int[16];        // food won (or lost, if negative) by each contestant
+    int[] payoffB = new int[16];
+
+    // payoff to an agent playing the first move against the second, indexed by [myMove * 2 + theirMove]
+    private final int[] payoff = new int[4];
+
+    private static final int DOVE = Strategy.DOVE.ordinal();
+    private static final int HAWK = Strategy.HAWK.ordinal();
+
+    // Forget all contests, ready for a new turn
+    void clear() {
+        count = 0;
+    }
+
+    void add(int cell, int a, int b, Strategy aMove, Strategy bMove) {
+        if (count == cells.length)
+            grow();
+        cells[count] = cell;
+        agentA[count] = a;
+        agentB[count] = b;
+        moveA[count] = (byte) aMove.ordinal();
+        moveB[count] = (byte) bMove.ordinal();
+        count++;
+    }
+
+    /**
+     * Work out the payoffs for every contest added since the last clear()
+     * @param foodValue v, the value of the contested food
+     * @param lossCost c, the food lost when losing a fight
+     * @param randomiseHawkGames if true, Hawk-Hawk games give v to one agent at random and cost the other c
+     * @param r source of randomness for randomised Hawk-Hawk games
+     */
+    void resolve(int foodValue, int lossCost, boolean randomiseHawkGames, RandomStream r) {
+        payoff[DOVE * 2 + DOVE] = foodValue / 2;
+        payoff[DOVE * 2 + HAWK] = 0;
+        payoff[HAWK * 2 + DOVE] = foodValue;
+        payoff[HAWK * 2 + HAWK] = (foodValue - lossCost) / 2;
+
+        for (int i = 0; i < count; i++) {
+            int a = moveA[i];
+            int b = moveB[i];
+            if (randomiseHawkGames && a == HAWK && b == HAWK) {
+                boolean aWins = r.nextBoolean();
+                payoffA[i] = aWins ? foodValue : -lossCost;
+                payoffB[i] = aWins ? -lossCost : foodValue;
+            } else {
+                payoffA[i] = payoff[a * 2 + b];
+                payoffB[i] = payoff[b * 2 + a];
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = cells.length * 2;
+        cells = Arrays.copyOf(cells, capacity);
+        agentA = Arrays.copyOf(agentA, capacity);
+        agentB = Arrays.copyOf(agentB, capacity);
+        moveA = Arrays.copyOf(moveA, capacity);
+        moveB = Arrays.copyOf(moveB, capacity);
+        payoffA = Arrays.copyOf(payoffA, capacity);
+        payoffB = Arrays.copyOf(payoffB, capacity);
+    }
+}
@@ -2,9 +2,8 @@ package GameLogic;
 
 import Agents.DoveAgent;
 import Agents.HawkAgent;
-import Tiles.Tile;
+import Tiles.ChunkSet;
 import Tiles.TilePattern;
-import java.util.Random;
 
 /**
  * Controller (listener) class to receive user input and update model
@@ -14,31 +13,34 @@ public class Controller {
 
     GridWorld gridWorld;
     View view;
-    Random r = new Random();
+    private ChunkSet changes;      // chunks changed since the board was last drawn
+    private final RenderFrame frame = new RenderFrame();    // for drawing turns played one at a time
+    private AutoplayEngine autoplay;
 
     /**
      * Start a new game/simulation run. Regenerate the world tiles, clear agents and repopulate
      */
     public void newGame() {
+        boolean playing = autoplay != null;
+        stopAutoplay();
         gridWorld.generateWorld(TilePattern.RANDOM_SPARSE);
-        gridWorld.agents.clear();
         gridWorld.addAgent(new DoveAgent(gridWorld.getWalkableTile(), "Adam"));
         gridWorld.addAgent(new HawkAgent(gridWorld.getWalkableTile(), "Eve"));
 
         // Generate food on E(x) = 5% of walkable tiles
-        for (Tile[] y_tile : gridWorld.tiles)
-            for (Tile x_tile : y_tile)
-                if (x_tile.walkable() && r.nextDouble() > 0.95)
-                    x_tile.growFood();
+        gridWorld.seedFood(0.05);
 
         view.drawWorldTiles(gridWorld.tiles, gridWorld.TILE_SIZE, gridWorld.OFFSET);
-        view.drawFood(gridWorld.tiles, gridWorld.TILE_SIZE, gridWorld.OFFSET);
-        view.highlightGoalFood(gridWorld.agents, gridWorld.TILE_SIZE, gridWorld.OFFSET);
-        view.drawAgents(gridWorld.agents, gridWorld.TILE_SIZE, gridWorld.OFFSET);
+        view.clearFood(gridWorld.tiles);
+        draw();
+        if (playing)
+            toggleAutoplay();
     }
 
     public void addModel(GridWorld gridWorld) {
         this.gridWorld = gridWorld;
+        this.changes = new ChunkSet(gridWorld.tiles.chunkCount());
+        gridWorld.tiles.trackChanges(changes);
     }
     public void addView(View view) {
         this.view = view;
@@ -46,12 +48,47 @@ public class Controller {
 
     public void nextTurn() {
 
-        gridWorld.moveAgents();
-        gridWorld.killDepletedAgents();
-        gridWorld.spawnAgents();
-        gridWorld.growFood();
-        view.drawAgents(gridWorld.agents, gridWorld.TILE_SIZE, gridWorld.OFFSET);
-        view.drawFood(gridWorld.tiles, gridWorld.TILE_SIZE, gridWorld.OFFSET);
-        view.highlightGoalFood(gridWorld.agents, gridWorld.TILE_SIZE, gridWorld.OFFSET);
+        if (autoplay != null)
+            return;
+        gridWorld.nextTurn();
+        draw();
+    }
+
+    private void draw() {
+        frame.capture(gridWorld, changes);
+        view.drawFrame(frame, gridWorld.tiles, gridWorld.TILE_SIZE, gridWorld.OFFSET);
+    }
+
+    /**
+     * Start playing turns by themselves, or stop if already playing
+     * @return whether autoplay is now on
+     */
+    public boolean toggleAutoplay() {
+        if (autoplay != null) {
+            stopAutoplay();
+            return false;
+        }
+        autoplay = new AutoplayEngine(gridWorld, changes, gridWorld.autoplayRate);
+        autoplay.start();
+        return true;
+    }
+
+    private void stopAutoplay() {
+        if (autoplay == null)
+            return;
+        autoplay.stop();
+        drawLatestFrame();
+        autoplay = null;
+    }
+
+    // Draw the newest turn autoplay has played, if the view hasn't drawn it yet
+    public void drawLatestFrame() {
+        if (autoplay == null)
+            return;
+        RenderFrame latest = autoplay.latestFrame();
+        if (latest == null)
+            return;
+        view.drawFrame(latest, gridWorld.tiles, gridWorld.TILE_SIZE, gridWorld.OFFSET);
+        autoplay.recycle(latest);
     }
 }
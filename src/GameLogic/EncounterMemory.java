@@ -0,0 +1,281 @@
+package GameLogic;
+
+import Agents.Strategy;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * What every agent in a world remembers about the opponents it has played, for strategies that respond to how an
+ * opponent has treated them before.
+ *
+ * Each agent in play gets a row of a fixed number of entries, one per opponent remembered, keyed by the opponent's id.
+ * An entry packs the last HISTORY encounters with that opponent into one long, as three lanes of one bit per
+ * encounter: the move the opponent played, the move the agent played, and whether the agent won (gained food from the
+ * contest). That's enough for strategies that answer the opponent's moves, like Tit-for-Tat, and for ones that answer
+ * how their own moves turned out, like Pavlov, and keeps the whole memory a handful of primitive arrays. When a row is full, meeting someone new evicts whoever was met least recently. A dead agent's row
+ * is freed for reuse straight away; entries about it in other rows are left to be evicted in the usual way, as they can
+ * never be looked up again. Rows are found from agent ids through an open-addressing table sized to the rows in use,
+ * so memory follows the number of agents alive at once, not the number ever born
+ */
+public class EncounterMemory {
+
+    public static final int HISTORY = 21;       // encounters remembered per opponent
+    public static final int LOST = 0, WON = 1;  // outcomes of an encounter, for the agent remembering it
+    private static final int NONE = -1;
+
+    // Where each lane of an entry's history starts, most recent encounter lowest
+    private static final int THEIRS = 0, OWN = HISTORY, OUTCOME = 2 * HISTORY;
+    private static final long LANE = (1L << HISTORY) - 1;
+    private static final long LANE_LOW = 1L | 1L << OWN | 1L << OUTCOME | 1L << 3 * HISTORY;   // lowest bit of each lane
+
+    public final int capacity;                  // opponents remembered per agent
+
+    private int[] table = new int[16];          // rows by their owner's id, with linear probing; NONE where empty
+    private int[] ownerOf = new int[4];         // agent id each row belongs to, or NONE if the row is free
+    private int[] freeRows = new int[4];
+    private int freeCount = 0;
+    private int rowCount = 0;                   // rows ever handed out, free or not
+
+    // Per entry, at row * capacity + i
+    private int[] opponent;                     // id of the opponent remembered, or NONE
+    private long[] history;                     // the three lanes, 1 for Hawk or won, 0 for Dove or lost
+    private byte[] count;                       // number of encounters in history, up to HISTORY
+    private long[] lastMet;                     // turn the opponent was last met
+
+    public EncounterMemory(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Must remember at least one opponent");
+        this.capacity = capacity;
+        this.opponent = new int[ownerOf.length * capacity];
+        this.history = new long[ownerOf.length * capacity];
+        this.count = new byte[ownerOf.length * capacity];
+        this.lastMet = new long[ownerOf.length * capacity];
+        Arrays.fill(table, NONE);
+    }
+
+    /**
+     * Remember an encounter from one agent's side
+     * @param id the agent remembering
+     * @param opponentId who it played
+     * @param ownMove the move the agent played
+     * @param theirMove the move the opponent played
+     * @param won whether the agent gained food from it
+     * @param turn the turn it happened on
+     */
+    public void record(int id, int opponentId, Strategy ownMove, Strategy theirMove, boolean won, long turn) {
+        int row = rowOf(id);
+        if (row == NONE)
+            row = allocate(id);
+        int entry = find(row, opponentId);
+        if (entry == NONE) {
+            // take an empty entry, or else the least recently met
+            entry = row * capacity;
+            for (int i = row * capacity; i < (row + 1) * capacity; i++) {
+                if (opponent[i] == NONE) {
+                    entry = i;
+                    break;
+                }
+                if (lastMet[i] < lastMet[entry])
+                    entry = i;
+            }
+            opponent[entry] = opponentId;
+            history[entry] = 0;
+            count[entry] = 0;
+        }
+        // shift every lane along one, dropping the oldest encounter from each
+        history[entry] = history[entry] << 1 & ~LANE_LOW | (theirMove == Strategy.HAWK ? 1L << THEIRS : 0) |
+                (ownMove == Strategy.HAWK ? 1L << OWN : 0) | (won ? 1L << OUTCOME : 0);
+        if (count[entry] < HISTORY)
+            count[entry]++;
+        lastMet[entry] = turn;
+    }
+
+    // Number of encounters an agent remembers with an opponent, up to HISTORY
+    public int encounters(int id, int opponentId) {
+        int entry = entry(id, opponentId);
+        return entry == NONE ? 0 : count[entry];
+    }
+
+    /**
+     * The moves an agent remembers an opponent playing, most recent in bit 0, with a 1 bit for each Hawk. Only the low
+     * encounters() bits mean anything
+     */
+    public int moves(int id, int opponentId) {
+        return lane(id, opponentId, THEIRS);
+    }
+
+    // The moves an agent played against an opponent, as moves() gives the opponent's
+    public int ownMoves(int id, int opponentId) {
+        return lane(id, opponentId, OWN);
+    }
+
+    // Which encounters with an opponent an agent won, most recent in bit 0, as moves() gives the opponent's moves
+    public int outcomes(int id, int opponentId) {
+        return lane(id, opponentId, OUTCOME);
+    }
+
+    // The last move an opponent played against an agent, or null if it doesn't remember one
+    public Strategy lastMove(int id, int opponentId) {
+        return encounters(id, opponentId) == 0 ? null :
+                (moves(id, opponentId) & 1) != 0 ? Strategy.HAWK : Strategy.DOVE;
+    }
+
+    // The last move an agent played against an opponent, or null if it doesn't remember one
+    public Strategy ownLastMove(int id, int opponentId) {
+        return encounters(id, opponentId) == 0 ? null :
+                (ownMoves(id, opponentId) & 1) != 0 ? Strategy.HAWK : Strategy.DOVE;
+    }
+
+    // Whether an agent WON or LOST its last encounter with an opponent, or -1 if it doesn't remember one
+    public int lastOutcome(int id, int opponentId) {
+        return encounters(id, opponentId) == 0 ? NONE : outcomes(id, opponentId) & 1;
+    }
+
+    private int lane(int id, int opponentId, int lane) {
+        int entry = entry(id, opponentId);
+        return entry == NONE ? 0 : (int) (history[entry] >>> lane & LANE);
+    }
+
+    // Forget everything an agent remembers, e.g. when it dies, freeing its row for someone else
+    public void forget(int id) {
+        int row = rowOf(id);
+        if (row == NONE)
+            return;
+        removeRow(id);
+        ownerOf[row] = NONE;
+        freeRows[freeCount++] = row;
+    }
+
+    // Forget everything about everyone
+    public void clear() {
+        Arrays.fill(table, NONE);
+        rowCount = 0;
+        freeCount = 0;
+    }
+
+    // Number of agents with anything remembered
+    public int size() {
+        return rowCount - freeCount;
+    }
+
+    private int slot(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ h >>> 16) & (table.length - 1);
+    }
+
+    private int rowOf(int id) {
+        for (int i = slot(id); ; i = (i + 1) & (table.length - 1)) {
+            int row = table[i];
+            if (row == NONE || ownerOf[row] == id)
+                return row;
+        }
+    }
+
+    private void insertRow(int id, int row) {
+        int i = slot(id);
+        while (table[i] != NONE)
+            i = (i + 1) & (table.length - 1);
+        table[i] = row;
+    }
+
+    // Take an agent's row out of the table, moving later entries back so no probe sequence is broken
+    private void removeRow(int id) {
+        int mask = table.length - 1;
+        int hole = slot(id);
+        while (ownerOf[table[hole]] != id)
+            hole = (hole + 1) & mask;
+        table[hole] = NONE;
+        for (int i = (hole + 1) & mask; table[i] != NONE; i = (i + 1) & mask) {
+            int home = slot(ownerOf[table[i]]);
+            // an entry can fill the hole unless its home slot lies cyclically between the hole and where it is
+            boolean between = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+            if (!between) {
+                table[hole] = table[i];
+                table[i] = NONE;
+                hole = i;
+            }
+        }
+    }
+
+    private int entry(int id, int opponentId) {
+        int row = rowOf(id);
+        return row == NONE ? NONE : find(row, opponentId);
+    }
+
+    private int find(int row, int opponentId) {
+        for (int i = row * capacity; i < (row + 1) * capacity; i++)
+            if (opponent[i] == opponentId)
+                return i;
+        return NONE;
+    }
+
+    // Give an agent a row of empty entries, reusing a dead agent's if there is one
+    private int allocate(int id) {
+        int row;
+        if (freeCount > 0) {
+            row = freeRows[--freeCount];
+        } else {
+            if (rowCount == ownerOf.length) {
+                int rows = rowCount * 2;
+                ownerOf = Arrays.copyOf(ownerOf, rows);
+                freeRows = Arrays.copyOf(freeRows, rows);
+                opponent = Arrays.copyOf(opponent, rows * capacity);
+                history = Arrays.copyOf(history, rows * capacity);
+                count = Arrays.copyOf(count, rows * capacity);
+                lastMet = Arrays.copyOf(lastMet, rows * capacity);
+            }
+            row = rowCount++;
+        }
+        Arrays.fill(opponent, row * capacity, (row + 1) * capacity, NONE);
+        ownerOf[row] = id;
+        if (size() * 2 > table.length) {
+            // keep the table at most half full, so probes stay short
+            int[] old = table;
+            table = new int[old.length * 2];
+            Arrays.fill(table, NONE);
+            for (int entry : old)
+                if (entry != NONE)
+                    insertRow(ownerOf[entry], entry);
+        }
+        insertRow(id, row);
+        return row;
+    }
+
+    // Number of bytes writeTo() will write
+    public long snapshotSize() {
+        return Integer.BYTES + (long) size() * (Integer.BYTES +
+                capacity * (Integer.BYTES + Byte.BYTES + 2 * Long.BYTES));
+    }
+
+    // Save every agent's memories
+    public void writeTo(SnapshotOutput out) throws IOException {
+        out.putInt(size());
+        for (int row = 0; row < rowCount; row++) {
+            if (ownerOf[row] == NONE)
+                continue;
+            out.putInt(ownerOf[row]);
+            for (int i = row * capacity; i < (row + 1) * capacity; i++) {
+                out.putInt(opponent[i]);
+                out.putLong(history[i]);
+                out.putByte(count[i]);
+                out.putLong(lastMet[i]);
+            }
+        }
+    }
+
+    // Restore memories saved by writeTo() from a memory with the same capacity, replacing any already here
+    public void readFrom(SnapshotInput in) throws IOException {
+        clear();
+        int agents = in.getInt();
+        for (int a = 0; a < agents; a++) {
+            int row = allocate(in.getInt());
+            for (int i = row * capacity; i < (row + 1) * capacity; i++) {
+                opponent[i] = in.getInt();
+                history[i] = in.getLong();
+                count[i] = in.getByte();
+                lastMet[i] = in.getLong();
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package GameLogic;
+
+import Tiles.FoodListener;
+import Tiles.TileGrid;
+
+import java.util.Arrays;
+
+/**
+ * Shared map of how many steps each tile is from its nearest food, so agents can find food by stepping to any
+ * adjacent tile that's closer, rather than each running their own search.
+ *
+ * Built with one breadth-first search from every food tile at once, then kept up to date incrementally as food grows
+ * and is eaten: growing food only lowers nearby distances, while losing food re-derives just the tiles whose distance
+ * may have depended on it
+ */
+public class FoodDistanceField implements FoodListener {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final TileGrid tiles;
+    private final int[] distance;           // steps from each tile to the nearest food, or UNREACHABLE
+
+    // Scratch space for updates, reused between calls
+    private final int[] mark;               // epoch at which each tile was last added to an invalidated region
+    private int epoch = 0;
+    private int[] queue = new int[64];
+    private int[] region = new int[64];
+    private long[] seeds = new long[64];    // (distance << 32 | cell) for tiles bordering an invalidated region
+
+    public FoodDistanceField(TileGrid tiles) {
+        this.tiles = tiles;
+        this.distance = new int[tiles.size()];
+        this.mark = new int[tiles.size()];
+        rebuild();
+    }
+
+    // Steps from a tile to the nearest food, or UNREACHABLE if no food can be reached from it
+    public int distance(int cell) {
+        return distance[cell];
+    }
+
+    /**
+     * Recompute every distance from scratch, e.g. after the world is regenerated
+     */
+    public void rebuild() {
+        Arrays.fill(distance, UNREACHABLE);
+        int tail = 0;
+        for (int cell = 0; cell < tiles.size(); cell++) {
+            if (tiles.hasFood(cell)) {
+                distance[cell] = 0;
+                queue = ensureCapacity(queue, tail + 1);
+                queue[tail++] = cell;
+            }
+        }
+        relax(tail, 0);
+    }
+
+    // Food can only make tiles closer to food, so spread lower distances outward from the new food
+    @Override
+    public void foodGrown(int cell) {
+        if (distance[cell] == 0)
+            return;
+        distance[cell] = 0;
+        queue[0] = cell;
+        relax(1, 0);
+    }
+
+    /**
+     * Tiles whose distance may have come from the lost food are those reachable from it by steps that each increase
+     * distance by exactly 1. Forget the distance of all of those, then refill them from the tiles surrounding them
+     */
+    @Override
+    public void foodLost(int cell) {
+        if (distance[cell] != 0)
+            return;
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(mark, 0);
+            epoch = 1;
+        }
+
+        // Collect the region of tiles that might have depended on this food
+        int regionSize = 0;
+        mark[cell] = epoch;
+        region[regionSize++] = cell;
+        for (int i = 0; i < regionSize; i++) {
+            int current = region[i];
+            for (int direction = 0; direction < 4; direction++) {
+                int adjacent = adjacentCell(current, direction);
+                if (adjacent != -1 && mark[adjacent] != epoch && distance[adjacent] != UNREACHABLE
+                        && distance[adjacent] == distance[current] + 1) {
+                    mark[adjacent] = epoch;
+                    region = ensureCapacity(region, regionSize + 1);
+                    region[regionSize++] = adjacent;
+                }
+            }
+        }
+
+        // Forget their distances, and find the surrounding tiles that still have valid ones
+        int seedCount = 0;
+        for (int i = 0; i < regionSize; i++)
+            distance[region[i]] = UNREACHABLE;
+        for (int i = 0; i < regionSize; i++) {
+            for (int direction = 0; direction < 4; direction++) {
+                int adjacent = adjacentCell(region[i], direction);
+                if (adjacent != -1 && mark[adjacent] != epoch && distance[adjacent] != UNREACHABLE) {
+                    if (seeds.length <= seedCount)
+                        seeds = Arrays.copyOf(seeds, seeds.length * 2);
+                    seeds[seedCount++] = ((long) distance[adjacent] << 32) | adjacent;
+                }
+            }
+        }
+
+        // Refill from the surrounding tiles, closest first
+        Arrays.sort(seeds, 0, seedCount);
+        relax(0, seedCount);
+    }
+
+    // Breadth-first spread of distances outward from the first queued tiles and the first sorted seeds, which must
+    // each be in order of increasing distance
+    private void relax(int tail, int seedCount) {
+        int head = 0;
+        int nextSeed = 0;
+        while (head < tail || nextSeed < seedCount) {
+            int current;
+            // take whichever of the queue and the sorted seeds is closer to food, so tiles are expanded in order
+            if (nextSeed < seedCount && (head == tail || (seeds[nextSeed] >>> 32) <= distance[queue[head]]))
+                current = (int) seeds[nextSeed++];
+            else
+                current = queue[head++];
+
+            int nextDistance = distance[current] + 1;
+            for (int m = tiles.neighbours(current); m != 0; m &= m - 1) {
+                int adjacent = tiles.adjacent(current, Integer.numberOfTrailingZeros(m));
+                if (distance[adjacent] > nextDistance) {
+                    distance[adjacent] = nextDistance;
+                    queue = ensureCapacity(queue, tail + 1);
+                    queue[tail++] = adjacent;
+                }
+            }
+        }
+    }
+
+    // One of the 4 tiles adjacent to a given tile: right, left, up, down. -1 if that's off the edge of the board
+    private int adjacentCell(int cell, int direction) {
+        int x = tiles.x(cell);
+        int y = tiles.y(cell);
+        switch (direction) {
+            case 0: return x + 1 < tiles.width ? cell + 1 : -1;
+            case 1: return x > 0 ? cell - 1 : -1;
+            case 2: return y > 0 ? cell - tiles.stride : -1;
+            default: return y + 1 < tiles.height ? cell + tiles.stride : -1;
+        }
+    }
+
+    private static int[] ensureCapacity(int[] array, int size) {
+        return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, array.length * 2));
+    }
+}
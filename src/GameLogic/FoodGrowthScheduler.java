@@ -0,0 +1,134 @@
+package GameLogic;
+
+import Tiles.TileGrid;
+
+import java.util.Arrays;
+
+/**
+ * Picks tiles for food to grow on. Only walkable tiles are ever picked, so no growth is wasted on walls, and picks can
+ * optionally be weighted by each tile's fertility. Either way each pick is O(1), however big the world is: uniform
+ * picks index straight into a list of walkable tiles, and weighted picks use an alias table (Vose's method).
+ *
+ * Food only grows in chunks of the world that have been generated. Chunks generated later are added to the list the
+ * next time a tile is picked
+ */
+public class FoodGrowthScheduler {
+
+    private final TileGrid tiles;
+    private int[] walkableCells = new int[64];  // every walkable tile, a chunk at a time in the order they were created
+    private int walkableCount = 0;
+    private int indexedChunks = 0;          // number of the grid's created chunks already in walkableCells
+
+    // Alias table over walkableCells, only built the first time a weighted pick is made
+    private double[] probability;           // chance of keeping each entry rather than taking its alias
+    private int[] alias;
+
+    /**
+     * Index the walkable tiles of a grid. Must be rebuilt if walls change
+     * @param tiles the grid of world tiles
+     */
+    public FoodGrowthScheduler(TileGrid tiles) {
+        this.tiles = tiles;
+        indexNewChunks();
+    }
+
+    public int walkableCount() {
+        indexNewChunks();
+        return walkableCount;
+    }
+
+    // Add the walkable tiles of any chunks created since the last pick
+    private void indexNewChunks() {
+        if (indexedChunks == tiles.createdCount())
+            return;
+        for (; indexedChunks < tiles.createdCount(); indexedChunks++) {
+            int origin = tiles.chunkOrigin(tiles.createdChunk(indexedChunks));
+            for (int y = 0; y < TileGrid.CHUNK_SIZE; y++) {
+                for (int x = 0; x < TileGrid.CHUNK_SIZE; x++) {
+                    int cell = origin + y * tiles.stride + x;
+                    if (tiles.walkable(cell)) {
+                        if (walkableCount == walkableCells.length)
+                            walkableCells = Arrays.copyOf(walkableCells, walkableCount * 2);
+                        walkableCells[walkableCount++] = cell;
+                    }
+                }
+            }
+        }
+        alias = null;       // rebuild the alias table to include the new tiles
+    }
+
+    /**
+     * Grow food for one turn
+     * @param rate expected number of food items to grow. The whole part always grows, and the fractional part is the
+     *             chance of one more
+     * @param byFertility if true, more fertile tiles are proportionally more likely to be picked
+     * @param r source of randomness
+     */
+    public void grow(double rate, boolean byFertility, RandomStream r) {
+        if (walkableCount() == 0)
+            return;
+        int count = (int) rate;
+        if (r.nextDouble() < rate - count)
+            count++;
+        for (int i = 0; i < count; i++)
+            tiles.growFood(byFertility ? pickByFertility(r) : pickUniform(r));
+    }
+
+    // Any walkable tile, all equally likely
+    public int pickUniform(RandomStream r) {
+        indexNewChunks();
+        return walkableCells[r.nextInt(walkableCount)];
+    }
+
+    // A walkable tile, with likelihood proportional to its fertility
+    public int pickByFertility(RandomStream r) {
+        indexNewChunks();
+        if (alias == null)
+            buildAliasTable();
+        int i = r.nextInt(walkableCount);
+        return walkableCells[r.nextDouble() < probability[i] ? i : alias[i]];
+    }
+
+    /*
+     * Vose's alias method: scale weights so they average 1, then repeatedly pair an under-full entry with an over-full
+     * one, topping the under-full entry up to 1 with the over-full one as its alias
+     */
+    private void buildAliasTable() {
+        int n = walkableCount;
+        probability = new double[n];
+        alias = new int[n];
+
+        double total = 0;
+        for (int i = 0; i < n; i++)
+            total += tiles.fertility(walkableCells[i]);
+
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0, largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            // if nothing is fertile, fall back to every tile being equally likely
+            probability[i] = total > 0 ? tiles.fertility(walkableCells[i]) * n / total : 1.0;
+            if (probability[i] < 1.0)
+                small[smallCount++] = i;
+            else
+                large[largeCount++] = i;
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int under = small[--smallCount];
+            int over = large[--largeCount];
+            alias[under] = over;
+            probability[over] -= 1.0 - probability[under];
+            if (probability[over] < 1.0)
+                small[smallCount++] = over;
+            else
+                large[largeCount++] = over;
+        }
+
+        // anything left over is full, give or take rounding error
+        while (largeCount > 0)
+            probability[large[--largeCount]] = 1.0;
+        while (smallCount > 0)
+            probability[small[--smallCount]] = 1.0;
+    }
+}
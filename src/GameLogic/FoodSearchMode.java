@@ -0,0 +1,10 @@
+package GameLogic;
+
+/**
+ * Options for how agents look for food.
+ * Limited sight: each agent runs its own depth-limited BFS, so can only see food a few steps away
+ * Distance field: agents follow a shared, world-wide map of distances to the nearest food
+ */
+public enum FoodSearchMode {
+    LIMITED_SIGHT, DISTANCE_FIELD
+}
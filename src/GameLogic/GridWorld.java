@@ -1,203 +1,529 @@
 package GameLogic;
 
 import Agents.Agent;
-import Tiles.FloorTile;
-import Tiles.Tile;
+import Agents.Strategy;
+import Agents.StrategyRegistry;
+import Tiles.Bitboard;
+import Tiles.ChunkSet;
+import Tiles.Components;
+import Tiles.TileGrid;
 import Tiles.TilePattern;
-import Tiles.WallTile;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+
 import java.util.NoSuchElementException;
-import java.util.Random;
 
 /**
  * A grid world, containing all tiles, agents and game logic
  */
 public class GridWorld extends WorldSettings {
 
-    public Tile[][] tiles;             // store all board pieces
-    public ArrayList<Agent> agents;    // store all agents in play
-    private Random r = new Random();
+    static final int POSITION_BUCKET_SIZE = 8;     // width and height in tiles of each bucket of the positions index
+    static final int PLACEMENT_TRIES = 64;         // random tiles tried before placing agents from the walkable index
+    private static final Strategy[] MOVES = Strategy.values();     // by ordinal, as contests store them
+
+    public TileGrid tiles;             // store all board pieces
+    public AgentStore agents;          // store all agents in play
+    public SpatialIndex positions;     // where every agent in play is, for "agents within radius r" queries
+    public ChunkSet changedChunks;     // chunks of tiles that changed during the last turn
+    public EncounterMemory encounters; // what each agent remembers of the opponents it has played
+    public Lineage lineage;            // family tree of every agent since the world was generated
+    FoodDistanceField foodField;       // shared distances to food, only kept while in DISTANCE_FIELD search mode
+    FoodGrowthScheduler foodGrowth;    // picks walkable tiles for food to grow on
+    TilePattern pattern = TilePattern.OPEN_FIELD;  // what the current world looks like, for generating its chunks
+    double foodDensity = 0;            // chance of each walkable tile starting with food, in every chunk generated
+    public long turn = 0;              // number of turns played since the world was generated
+    int nextAgentId = 0;
+
+    // Every source of randomness is split from one master stream, so a given seed always plays out the same way
+    RandomStream random;               // master stream, advanced once per new world
+    long worldSeed;                    // seed for the current world's generation, one stream per chunk
+    long agentSeed;                    // seed for the current world's agents, one stream per agent id
+    long foodSeed;                     // seed for the food first seeded in each chunk, one stream per chunk
+    RandomStream foodRandom;           // food seeding and growth
+    RandomStream placementRandom;      // picking tiles to place agents on
+    RandomStream contestRandom;        // randomised Hawk-Hawk games
+
+    // Which agents stepped onto food this turn, and where. Only holds anything during the commit phase
+    private SpatialIndex claims;
+    private int[] claimedCells = new int[16];      // every tile in claims, in the order first claimed
+    final ContestResolver contests = new ContestResolver();   // this turn's contests, kept until the next turn
+    private final int[] spawnCandidates = new int[4];
+
+    // What happened during the last turn, for metrics
+    int turnBirths;
+    int turnDeaths;
+    int turnMeals;                     // food eaten without a contest
 
     public GridWorld() {
         super();
-        this.tiles = new Tile[WORLD_X_TILES][WORLD_Y_TILES];     // allocate memory for all needed tiles
-        this.agents = new ArrayList<>();
+        allocate();
+    }
+
+    // A world with its own copy of the given settings
+    public GridWorld(WorldSettings settings) {
+        super(settings);
+        allocate();
+    }
+
+    // A world of a custom size, with every other setting at its default
+    public GridWorld(int worldXTiles, int worldYTiles) {
+        super();
+        this.WORLD_X_TILES = worldXTiles;
+        this.WORLD_Y_TILES = worldYTiles;
+        allocate();
+    }
+
+    // Set up tiles and bookkeeping. Tile memory is only allocated a chunk at a time, as the world is generated
+    private void allocate() {
+        this.tiles = new TileGrid(WORLD_X_TILES, WORLD_Y_TILES);
+        this.agents = new AgentStore();
+        this.positions = new SpatialIndex(tiles, POSITION_BUCKET_SIZE);
+        setSeed(seed);
+        this.claims = new SpatialIndex(tiles, POSITION_BUCKET_SIZE);
+        tiles.setGenerator(this::generateChunk);
+        this.encounters = new EncounterMemory(ENCOUNTER_MEMORY);
+        this.lineage = new Lineage();
+        this.changedChunks = new ChunkSet(tiles.chunkCount());
+        tiles.trackChanges(changedChunks);
     }
 
     /**
-     * Populate the matrix of Tiles for this GridWOrld
+     * Restart all randomness from a seed. The next world generated, and everything that happens in it, will be the same
+     * for the same seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        random = new RandomStream(seed);
+        splitStreams();
+    }
+
+    // Derive fresh streams for a new world from the master stream
+    private void splitStreams() {
+        worldSeed = random.nextLong();
+        agentSeed = random.nextLong();
+        foodSeed = random.nextLong();
+        foodRandom = random.split();
+        placementRandom = random.split();
+        contestRandom = random.split();
+    }
+
+    /**
+     * Start a new world, removing any agents in play. Tiles are generated a chunk at a time; unless lazyChunks is set,
+     * every chunk is generated straight away, in parallel if parallelGeneration is set. Whole worlds can also be made
+     * connected: see connectedWorlds
      * @param pattern a TilePattern enum, indicating what the world will look like
+     * @throws IllegalStateException if both connectedWorlds and lazyChunks are set, as a world can only be made
+     * connected once all of it is generated
      */
     public void generateWorld(TilePattern pattern) {
+        if (connectedWorlds && lazyChunks)
+            throw new IllegalStateException("Lazy worlds can't be made connected; set connectedWorlds or lazyChunks");
+
+        splitStreams();
+        this.pattern = pattern;
+        foodDensity = 0;
+        tiles.clear();
+        agents.clear();
+        positions.clear();
+        encounters.clear();
+        lineage.clear(nextAgentId);
+        detachFoodField();
+        turn = 0;
+        if (!lazyChunks) {
+            tiles.createAll(parallelGeneration);
+            if (connectedWorlds)
+                keepLargestRegion();
+        }
+        foodGrowth = new FoodGrowthScheduler(tiles);
+    }
+
+    // Wall up every walkable tile an agent couldn't reach from the largest region, so all of the world is reachable
+    private void keepLargestRegion() {
+        Components components = new Components(tiles);
+        if (components.isConnected())
+            return;
+        int largest = components.largest();
+        for (int y = 0; y < WORLD_Y_TILES; y++)
+            for (int x = 0; x < WORLD_X_TILES; x++)
+                if (components.of(tiles.index(x, y)) > Components.NONE && components.of(tiles.index(x, y)) != largest)
+                    tiles.setWall(tiles.index(x, y));
+    }
 
-        for (int y = 0; y < WORLD_Y_TILES; y++) {
-            for (int x = 0; x < WORLD_X_TILES; x++) {
+    /*
+     * Generate one chunk of the world. Each chunk has its own random stream, so it comes out the same whenever and in
+     * whatever order chunks are generated
+     */
+    private void generateChunk(TileGrid tiles, int chunk) {
+        RandomStream r = RandomStream.forKey(worldSeed, chunk);
+        int origin = tiles.chunkOrigin(chunk);
+        int minX = tiles.x(origin), maxX = Math.min(WORLD_X_TILES, minX + TileGrid.CHUNK_SIZE);
+        int minY = tiles.y(origin), maxY = Math.min(WORLD_Y_TILES, minY + TileGrid.CHUNK_SIZE);
+        for (int y = minY; y < maxY; y++) {
+            for (int x = minX; x < maxX; x++) {
+                int cell = tiles.index(x, y);
                 // Make all perimeter Tiles into Walls
-                if (x == 0 || x == WORLD_Y_TILES - 1 || y == 0 || y == WORLD_X_TILES - 1) {
-                    // TODO add tile sprites and randomise different varieties
-                    tiles[x][y] = new WallTile(new Position(x, y), "Wal11.png");
+                if (x == 0 || x == WORLD_X_TILES - 1 || y == 0 || y == WORLD_Y_TILES - 1) {
+                    tiles.setWall(cell);
                 } else {
+                    // Fertility is drawn first, so every floor tile's fertility is the same whatever the pattern
+                    float fertility = r.nextFloat();
                     switch (pattern) {
                         case OPEN_FIELD:
-                            tiles[x][y] = new FloorTile(new Position(x, y), "Floor1.png");
+                            tiles.setFloor(cell, fertility);
                             break;
 
                         case RANDOM_SPARSE:
-                            tiles[x][y] = r.nextDouble() > 0.9 ? new WallTile(new Position(x, y), "Wal11.png") :
-                                    new FloorTile(new Position(x, y), "Floor1.png");
+                            if (r.nextDouble() > 0.9)
+                                tiles.setWall(cell);
+                            else
+                                tiles.setFloor(cell, fertility);
                             break;
 
                         case RANDOM_DENSE:
-                            tiles[x][y] = r.nextDouble() > 0.75 ? new WallTile(new Position(x, y), "Wal11.png") :
-                                    new FloorTile(new Position(x, y), "Floor1.png");
+                            if (r.nextDouble() > 0.75)
+                                tiles.setWall(cell);
+                            else
+                                tiles.setFloor(cell, fertility);
                             break;
 
                         case CORRIDORS:
-                            boolean gapIncluded = false;
-                            if (x % 2 == 1)     // every odd row should be clear
-                                tiles[x][y] = new FloorTile(new Position(x, y), "Floor1.png");
-                            else {
-                                // If at last position where there could be a gap, make sure there is at least one
-                                if (y == WORLD_Y_TILES - 2) {
-                                    for (int i = 0; i < y; i++)
-                                        if (tiles[x][i] instanceof FloorTile)
-                                            gapIncluded = true;
-                                    if (!gapIncluded)
-                                        tiles[x][y] = new FloorTile(new Position(x, y), "Floor1.png");
-                                    else {
-                                        tiles[x][y] = r.nextDouble() < (1.0 / (WORLD_Y_TILES - 2)) ?
-                                                new FloorTile(new Position(x, y), "Floor1.png") :
-                                                new WallTile(new Position(x, y), "Wal11.png");
-                                    }
-                                } else {        // randomly assign a gap with E(# gaps) = 1 per row
-                                    tiles[x][y] = r.nextDouble() < (1.0 / (WORLD_Y_TILES - 2)) ?
-                                            new FloorTile(new Position(x, y), "Floor1.png") :
-                                            new WallTile(new Position(x, y), "Wal11.png");
-                                }
-                            }
+                            if (x % 2 == 1)     // every odd column should be clear
+                                tiles.setFloor(cell, fertility);
+                            // every wall column has at least one gap, plus E(# gaps) = 1 more at random
+                            else if (y == corridorGap(x) || r.nextDouble() < (1.0 / (WORLD_Y_TILES - 2)))
+                                tiles.setFloor(cell, fertility);
+                            else
+                                tiles.setWall(cell);
                             break;
 
                         default:
-                            tiles[x][y] = new FloorTile(new Position(x, y), "Floor1.png");
+                            tiles.setFloor(cell, fertility);
                             break;
                     }
                 }
             }
         }
+        if (foodDensity > 0)
+            seedChunk(chunk);
+    }
+
+    // The row of the guaranteed gap in a CORRIDORS wall column, picked by the column alone so any chunk can find it
+    private int corridorGap(int x) {
+        // chunk streams use keys from 0 up, so key columns from -1 down
+        return 1 + RandomStream.forKey(worldSeed, -1 - x).nextInt(WORLD_Y_TILES - 2);
     }
 
-    // Add an agent to a specific tile on the map
+    // Add a new agent to a specific tile on the map, with the starting amount of food
     public void addAgent(Agent newVisitor) {
+        addAgent(newVisitor, STARTING_FOOD);
+    }
+
+    private void addAgent(Agent newVisitor, int food) {
         Position spawnLocation = newVisitor.position;
-        if (spawnLocation.x < 0 || spawnLocation.x > WORLD_Y_TILES - 1 ||
-                spawnLocation.y < 0 || spawnLocation.y > WORLD_X_TILES - 1)
+        if (!tiles.inBounds(spawnLocation.x, spawnLocation.y))
             throw new IndexOutOfBoundsException("That's outside the world!");
-        else if (tiles[spawnLocation.x][spawnLocation.y] == null)
-            throw new NoSuchElementException("World tiles haven't been initiated yet");
-        else if (!tiles[spawnLocation.x][spawnLocation.y].walkable())
+        else if (!tiles.walkable(spawnLocation.x, spawnLocation.y))
             throw new IllegalArgumentException("Cannot spawn an Agent on this kind of tile");
-        tiles[spawnLocation.x][spawnLocation.y].addAgent(newVisitor);
+        tiles.addAgent(tiles.index(spawnLocation.x, spawnLocation.y));
+        newVisitor.id = nextAgentId++;
+        newVisitor.birth_turn = turn;
+        if (newVisitor.parent_id == -1)
+            lineage.addFounder(newVisitor.id, turn);
+        else
+            lineage.addChild(newVisitor.id, newVisitor.parent_id, turn);
+        newVisitor.food = food;
+        newVisitor.random = RandomStream.forKey(agentSeed, newVisitor.id);
         agents.add(newVisitor);
+        positions.insert(newVisitor.id, tiles.index(spawnLocation.x, spawnLocation.y));
+        createAround(tiles.index(spawnLocation.x, spawnLocation.y));
+    }
+
+    // Make sure every chunk an agent on a tile could see is generated, so the decide phase never has to generate any
+    void createAround(int cell) {
+        if (lazyChunks)
+            tiles.createAround(cell, 1 + DFSlimit / TileGrid.CHUNK_SIZE);
+    }
+
+    /**
+     * The connected regions of the world as it is now, e.g. to report how many there are or whether it's connected.
+     * Covers the whole world, so generates every chunk of a lazy world
+     */
+    public Components regions() {
+        return new Components(tiles);
     }
 
-    // Get random walkable tile
+    /**
+     * Get a random walkable tile. Once every chunk exists, it's picked straight from the index of walkable tiles, all
+     * equally likely. Before then, tiles anywhere in the world are tried, as only generating a chunk says whether its
+     * tiles are walkable: each try that lands in a chunk not generated yet generates it, so a lazy world that is
+     * mostly walls can have up to PLACEMENT_TRIES chunks generated per placement. After that many misses, the tile is
+     * picked from the chunks generated so far, which favours them over the rest of the world; failing that, every
+     * chunk is generated and it's picked from the whole world
+     * @throws NoSuchElementException if nothing in the world is walkable
+     */
     public Position getWalkableTile() {
-        if (tiles.length == 0)
+        if (foodGrowth == null)
             throw new NoSuchElementException("World tiles haven't been initiated yet.");
 
-        int x = r.nextInt(WORLD_Y_TILES);
-        int y = r.nextInt(WORLD_X_TILES);
-
-        // DANGER! Infinite loop!
-        while (!tiles[x][y].walkable()) {
-            x = r.nextInt(WORLD_Y_TILES);
-            y = r.nextInt(WORLD_X_TILES);
+        if (!tiles.allCreated()) {
+            for (int tries = 0; tries < PLACEMENT_TRIES; tries++) {
+                int x = placementRandom.nextInt(WORLD_X_TILES);
+                int y = placementRandom.nextInt(WORLD_Y_TILES);
+                if (tiles.walkable(x, y))
+                    return new Position(x, y);
+            }
+            if (foodGrowth.walkableCount() == 0)
+                tiles.createAll();
         }
-        return new Position(x, y);
+        if (foodGrowth.walkableCount() == 0)
+            throw new NoSuchElementException("Nowhere in the world is walkable");
+        int cell = foodGrowth.pickUniform(placementRandom);
+        return new Position(tiles.x(cell), tiles.y(cell));
     }
 
-    // User pressed button for next turn
+    /**
+     * Advance the simulation by one turn: move, cull, breed and grow food. Touches no display state, so can be driven
+     * either by the Controller or headlessly by a HeadlessRunner
+     */
+    public void nextTurn() {
+        turnBirths = 0;
+        turnDeaths = 0;
+        turnMeals = 0;
+        changedChunks.clear();
+        moveAgents();
+        killDepletedAgents();
+        spawnAgents();
+        growFood();
+        turn++;
+    }
+
+    /**
+     * Grow food on each walkable tile with the given probability, e.g. at the start of a game. Chunks that haven't
+     * been generated yet are seeded in the same way when they are
+     */
+    public void seedFood(double density) {
+        foodDensity = density;
+        for (int i = 0; i < tiles.createdCount(); i++)
+            seedChunk(tiles.createdChunk(i));
+    }
+
+    private void seedChunk(int chunk) {
+        RandomStream r = RandomStream.forKey(foodSeed, chunk);
+        int origin = tiles.chunkOrigin(chunk);
+        int minX = tiles.x(origin), maxX = Math.min(WORLD_X_TILES, minX + TileGrid.CHUNK_SIZE);
+        int minY = tiles.y(origin), maxY = Math.min(WORLD_Y_TILES, minY + TileGrid.CHUNK_SIZE);
+        for (int y = minY; y < maxY; y++)
+            for (int x = minX; x < maxX; x++)
+                if (tiles.walkable(x, y) && r.nextDouble() < foodDensity)
+                    tiles.growFood(tiles.index(x, y));
+    }
+
+    /**
+     * Move every agent one step, in two phases. First every agent decides where to go, all looking at the same unchanged
+     * world, so this can safely run in parallel. Then all moves are applied together. Food that only one agent stepped
+     * onto is simply eaten; where several did, the two that entered the world first play a game for it. The outcome
+     * never depends on the order agents are stored or processed in
+     */
     void moveAgents() {
-        for (Agent agent : agents) {
-            Position oldPos = agent.position;
+        updateFoodField();
+        updateBitboard();
+        if (parallelAgentSteps)
+            agents.parallelStream().forEach(this::decideMove);
+        else
+            agents.forEach(this::decideMove);
+        commitMoves();
+    }
+
+    // Decide phase: only reads the world, and only changes the agent's own state
+    private void decideMove(Agent agent) {
+        if (foodField != null)
+            agent.followFoodField(tiles, foodField);
+        else
             agent.searchForFood(tiles, DFSlimit);
-            agent.move();
+    }
+
+    // Commit phase: apply every agent's move, then settle who gets any food that was moved onto
+    private void commitMoves() {
+        contests.clear();
+        int claimedCount = 0;
+
+        for (int i = 0; i < agents.size(); i++) {
+            Agent agent = agents.get(i);
+            Position oldPos = agent.position;
+            agent.move(tiles, STEPS_TO_LOSE_FOOD);
             Position newPos = agent.position;
 
-            // if agent moved, update tile it is associated with & harvest food
+            // if agent moved, update tile it is associated with & stake a claim to any food there
             if (!oldPos.equals(newPos)) {
-                tiles[oldPos.x][oldPos.y].agents.remove(agent);
-                tiles[newPos.x][newPos.y].agents.add(agent);
-                if (tiles[newPos.x][newPos.y].hasFood()) {
-                    tiles[newPos.x][newPos.y].loseFood();
-                    agent.gain_food(1);
+                int oldCell = tiles.index(oldPos.x, oldPos.y);
+                int newCell = tiles.index(newPos.x, newPos.y);
+                tiles.removeAgent(oldCell);
+                tiles.addAgent(newCell);
+                positions.move(agent.id, newCell);
+                if (tiles.chunkOf(newCell) != tiles.chunkOf(oldCell))
+                    createAround(newCell);
+                if (tiles.hasFood(newCell)) {
+                    if (!claimed(newCell)) {
+                        if (claimedCount == claimedCells.length)
+                            claimedCells = Arrays.copyOf(claimedCells, claimedCount * 2);
+                        claimedCells[claimedCount++] = newCell;
+                    }
+                    claims.insert(agent.id, newCell);
                 }
             }
         }
+
+        // harvest food for each uncontested claim, and collect the contested ones
+        for (int c = 0; c < claimedCount; c++) {
+            int cell = claimedCells[c];
+            int claimant = SpatialIndex.NONE;   // claimant with the lowest id
+            int rival = SpatialIndex.NONE;      // claimant with the next lowest id
+            for (int entry = claims.first(cell); entry != SpatialIndex.NONE; ) {
+                int next = claims.next(entry);
+                if (claims.cellAt(entry) == cell) {
+                    int id = claims.idAt(entry);
+                    if (claimant == SpatialIndex.NONE || id < claimant) {
+                        rival = claimant;
+                        claimant = id;
+                    } else if (rival == SpatialIndex.NONE || id < rival)
+                        rival = id;
+                    claims.remove(id);
+                }
+                entry = next;
+            }
+
+            Agent agent = agents.get(agents.slotOf(claimant));
+            if (rival == SpatialIndex.NONE) {
+                tiles.loseFood(cell);
+                agent.gain_food(FOOD_VALUE);
+                turnMeals++;
+            } else {
+                Agent opponent = agents.get(agents.slotOf(rival));
+                contests.add(cell, agents.slotOf(claimant), agents.slotOf(rival), chooseMove(agent, opponent, cell),
+                        chooseMove(opponent, agent, cell));
+            }
+        }
+
+        // play every contest at once
+        contests.resolve(FOOD_VALUE, GAME_LOSS_COST, randomiseHawkGames, contestRandom);
+        for (int i = 0; i < contests.count; i++) {
+            tiles.loseFood(contests.cells[i]);
+            Agent a = agents.get(contests.agentA[i]);
+            Agent b = agents.get(contests.agentB[i]);
+            a.gain_food(contests.payoffA[i]);
+            b.gain_food(contests.payoffB[i]);
+            Strategy moveA = MOVES[contests.moveA[i]], moveB = MOVES[contests.moveB[i]];
+            encounters.record(a.id, b.id, moveA, moveB, contests.payoffA[i] > 0, turn);
+            encounters.record(b.id, a.id, moveB, moveA, contests.payoffB[i] > 0, turn);
+        }
     }
 
-    // if any agent's food stores drop below 0, it dies
-    void killDepletedAgents() {
+    // Whether any agent has claimed the food on a tile yet this turn
+    private boolean claimed(int cell) {
+        for (int entry = claims.first(cell); entry != SpatialIndex.NONE; entry = claims.next(entry))
+            if (claims.cellAt(entry) == cell)
+                return true;
+        return false;
+    }
 
-        ArrayList<Agent> agentsToDelete = new ArrayList<>();
+    /**
+     * The move an agent plays against an opponent for the food on a tile: Dove if they're loyal kin, otherwise whatever
+     * the agent's strategy plays in its situation
+     */
+    private Strategy chooseMove(Agent agent, Agent opponent, int cell) {
+        if (kinLoyalty != KinLoyalty.NONE) {
+            Agent young = agent.id > opponent.id ? agent : opponent, old = young == agent ? opponent : agent;
+            if (lineage.isAncestor(old.id, young.id, KIN_GENERATIONS) && (kinLoyalty == KinLoyalty.ETERNAL ||
+                    turn - young.birth_turn < KIN_COOL_OFF_TURNS))
+                return Strategy.DOVE;
+        }
+        int situation = agent.goal == cell ? StrategyRegistry.OWNER : 0;
+        int met = encounters.encounters(agent.id, opponent.id);
+        if (met > 0) {
+            int moves = encounters.moves(agent.id, opponent.id);
+            situation |= StrategyRegistry.MET;
+            if ((moves & 1) != 0)
+                situation |= StrategyRegistry.LAST_HAWK;
+            if ((moves & (1 << met) - 1) != 0)      // met is at most HISTORY, under 32
+                situation |= StrategyRegistry.EVER_HAWK;
+            if ((encounters.ownMoves(agent.id, opponent.id) & 1) != 0)
+                situation |= StrategyRegistry.PLAYED_HAWK;
+            if ((encounters.outcomes(agent.id, opponent.id) & 1) != 0)
+                situation |= StrategyRegistry.WON;
+        }
+        return StrategyRegistry.move(agent.getStrategy(), situation, contestRandom);
+    }
 
-        if (agents.size() > 0) {
-            for (Agent agent : agents) {
-                if (agent.food <= 0) {
-                    Position deathPlace = agent.position;
-                    agentsToDelete.add(agent);
-                    tiles[deathPlace.x][deathPlace.y].agents.remove(agent);
-                }
+    // Build or drop the shared food distance field to match the current food search mode
+    private void updateFoodField() {
+        if (foodSearchMode == FoodSearchMode.DISTANCE_FIELD && foodField == null) {
+            tiles.createAll();      // the field covers the whole world
+            foodField = new FoodDistanceField(tiles);
+            tiles.setFoodListener(foodField);
+        } else if (foodSearchMode != FoodSearchMode.DISTANCE_FIELD)
+            detachFoodField();
+    }
+
+    // Start or stop keeping a bitboard to match bitboardMode, and work out what's near food for this turn
+    private void updateBitboard() {
+        tiles.useBitboard(bitboardMode);
+        if (bitboardMode)
+            tiles.bitboard().updateNearFood();
+    }
+
+    private void detachFoodField() {
+        tiles.setFoodListener(null);
+        foodField = null;
+    }
+
+    // if any agent's food stores drop below 0, it dies
+    void killDepletedAgents() {
+        // walk backwards, so the agent swapped into a dead agent's slot has already been checked
+        for (int i = agents.size() - 1; i >= 0; i--) {
+            Agent agent = agents.get(i);
+            if (agent.food <= 0) {
+                Position deathPlace = agent.position;
+                tiles.removeAgent(tiles.index(deathPlace.x, deathPlace.y));
+                agents.removeAt(i);
+                positions.remove(agent.id);
+                encounters.forget(agent.id);
+                turnDeaths++;
             }
         }
-        if (agentsToDelete.size() > 0)
-            for (Agent walkingDeadAgent : agentsToDelete)
-                agents.remove(walkingDeadAgent);
     }
 
     // Find all agents with enough food to spawn a new agent
     void spawnAgents() {
-        // Need to add new agents to a separate list and join after iterating through array, or get
-        // concurrent modification error
-        ArrayList<Agent> newAgents = new ArrayList<>();
-
-        if (agents.size() > 0) {
-            for (Agent agent : agents) {
-                if (agent.food >= SPAWN_THRESHOLD) {
-                    Position[] adjacents = agent.position.getAdjacentPositions();
-                    ArrayList<Position> possibleSpawnLocs = new ArrayList<>();
-                    // find potential adjacent spawn locations
-                    for (Position pos : adjacents) {
-                        // ignore squares outside potential range
-                        if (pos.x < 1 || pos.x > tiles.length - 2 || pos.y < 1 || pos.y > tiles.length - 2)
-                            continue;
-                        // find all adjacent squares that are walkable and don't have an agent there
-                        else if (tiles[pos.x][pos.y].walkable() && tiles[pos.x][pos.y].agents.size() == 0) {
-                            possibleSpawnLocs.add(pos);
-                        }
-                    }
-                    if (possibleSpawnLocs.size() > 0) {
-                        agent.lose_food(STARTING_FOOD + SPAWN_COST);
-                        newAgents.add(agent.spawnChild(possibleSpawnLocs.get(r.nextInt(possibleSpawnLocs.size()))));
-                    }
+        // children go on the end of the store, so only parents already in play are checked
+        Bitboard bits = tiles.bitboard();
+        int parents = agents.size();
+        for (int i = 0; i < parents; i++) {
+            Agent agent = agents.get(i);
+            if (agent.food >= SPAWN_THRESHOLD) {
+                int cell = tiles.index(agent.position.x, agent.position.y);
+                int possibleSpawnLocs = 0;
+                // find all adjacent squares that are walkable and don't have an agent there
+                int m = bits != null ? bits.freeNeighbours(cell) : tiles.neighbours(cell);
+                for (; m != 0; m &= m - 1) {
+                    int adjacent = tiles.adjacent(cell, Integer.numberOfTrailingZeros(m));
+                    if (bits != null || tiles.agentCount(adjacent) == 0)
+                        spawnCandidates[possibleSpawnLocs++] = adjacent;
+                }
+                if (possibleSpawnLocs > 0) {
+                    agent.lose_food(CHILD_START_FOOD + SPAWN_COST);
+                    int spawnCell = spawnCandidates[agent.random.nextInt(possibleSpawnLocs)];
+                    Agent child = agent.spawnChild(new Position(tiles.x(spawnCell), tiles.y(spawnCell)));
+                    child.parent_id = agent.id;
+                    addAgent(child, CHILD_START_FOOD);
+                    turnBirths++;
                 }
             }
         }
-        if (newAgents.size() > 0) {
-            agents.addAll(newAgents);
-        }
     }
 
-    // randomly add food to a tile
+    // randomly add food to walkable tiles, FOOD_GROWTH_RATE items per turn on average
     public void growFood() {
-        // possibly grow food
-        if (r.nextDouble() < FOOD_GROWTH_RATE) {
-            int x = r.nextInt(WORLD_Y_TILES - 3) + 1;
-            int y = r.nextInt(WORLD_X_TILES - 3) + 1;
-
-            if (tiles[x][y].walkable())
-                tiles[x][y].growFood();
-        }
+        foodGrowth.grow(FOOD_GROWTH_RATE, fertilityWeightedGrowth, foodRandom);
     }
 }
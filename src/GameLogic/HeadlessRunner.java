@@ -0,0 +1,171 @@
+package GameLogic;
+
+import Agents.Agent;
+import Agents.DoveAgent;
+import Agents.HawkAgent;
+import Agents.StrategyRegistry;
+import Tiles.TilePattern;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Runs a simulation without any JavaFX display, for batch runs and parameter sweeps on machines with no screen.
+ * Drives the same GridWorld turn logic as the Controller, but skips all drawing
+ */
+public class HeadlessRunner {
+
+    GridWorld gridWorld;
+    private MetricsRecorder metrics;       // records every turn, if set
+    private Path checkpoint;               // where to save the world every checkpointInterval turns, if set
+    private long checkpointInterval;
+
+    public HeadlessRunner(GridWorld gridWorld) {
+        this.gridWorld = gridWorld;
+    }
+
+    /**
+     * Start a new run. Regenerate the world tiles, clear agents and repopulate with the given number of each agent type
+     * @param pattern a TilePattern enum, indicating what the world will look like
+     * @param doves number of DoveAgents to start with
+     * @param hawks number of HawkAgents to start with
+     * @param foodDensity probability of each walkable tile starting with food
+     */
+    public void newGame(TilePattern pattern, int doves, int hawks, double foodDensity) {
+        gridWorld.generateWorld(pattern);
+        for (int i = 0; i < doves; i++)
+            gridWorld.addAgent(new DoveAgent(gridWorld.getWalkableTile(), "Dove" + i));
+        for (int i = 0; i < hawks; i++)
+            gridWorld.addAgent(new HawkAgent(gridWorld.getWalkableTile(), "Hawk" + i));
+        gridWorld.seedFood(foodDensity);
+    }
+
+    /**
+     * Add agents playing any registered strategy to the current game, at random walkable tiles
+     * @param strategy a StrategyRegistry strategy number
+     */
+    public void addAgents(int strategy, int count) {
+        String name = StrategyRegistry.name(strategy);
+        for (int i = 0; i < count; i++)
+            gridWorld.addAgent(StrategyRegistry.create(strategy, gridWorld.getWalkableTile(), name + i));
+    }
+
+    /**
+     * Record statistics for every turn from now on to a file. Call finish() once done to write out the last turns
+     * @param file where to write the metrics
+     */
+    public void recordMetrics(Path file) throws IOException {
+        finish();
+        metrics = new MetricsRecorder(file);
+    }
+
+    // Stop recording metrics, writing out anything still buffered
+    public void finish() throws IOException {
+        if (metrics != null) {
+            metrics.close();
+            metrics = null;
+        }
+    }
+
+    /**
+     * Save a snapshot of the world every so often, so a long run can be resumed with WorldSnapshot.load() if it's
+     * interrupted. Each snapshot is written alongside the last one, then swapped in, so there's always a whole snapshot
+     * @param file where to save snapshots
+     * @param interval number of turns between snapshots
+     */
+    public void checkpointEvery(long interval, Path file) {
+        if (interval < 1)
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        this.checkpoint = file;
+        this.checkpointInterval = interval;
+    }
+
+    /**
+     * Advance the world by up to the given number of turns, stopping early if every agent has died
+     * @param turns max number of turns to run
+     * @return the number of turns actually run
+     */
+    public long run(long turns) {
+        long turnsRun = 0;
+        while (turnsRun < turns && gridWorld.agents.size() > 0) {
+            gridWorld.nextTurn();
+            if (metrics != null)
+                record();
+            if (checkpoint != null && gridWorld.turn % checkpointInterval == 0)
+                saveCheckpoint();
+            turnsRun++;
+        }
+        return turnsRun;
+    }
+
+    private void record() {
+        try {
+            metrics.record(gridWorld);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write metrics", e);
+        }
+    }
+
+    private void saveCheckpoint() {
+        try {
+            Path partial = checkpoint.resolveSibling(checkpoint.getFileName() + ".partial");
+            WorldSnapshot.save(gridWorld, partial);
+            Files.move(partial, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't save checkpoint", e);
+        }
+    }
+
+    // Count how many living agents play a StrategyRegistry strategy
+    public int countAgents(int strategy) {
+        int count = 0;
+        for (Agent agent : gridWorld.agents)
+            if (agent.getStrategy() == strategy)
+                count++;
+        return count;
+    }
+
+    // Count how many living agents are of the given type
+    public int countAgents(Class<? extends Agent> agentType) {
+        int count = 0;
+        for (Agent agent : gridWorld.agents)
+            if (agentType.isInstance(agent))
+                count++;
+        return count;
+    }
+
+    /**
+     * Run a single headless simulation from the command line.
+     * Usage: HeadlessRunner [turns] [pattern] [doves] [hawks] [seed] [metrics file] [family tree file]
+     */
+    public static void main(String[] args) throws IOException {
+        long turns = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+        TilePattern pattern = args.length > 1 ? TilePattern.valueOf(args[1]) : TilePattern.RANDOM_SPARSE;
+        int doves = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int hawks = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        GridWorld gridWorld = new GridWorld();
+        if (args.length > 4)
+            gridWorld.setSeed(Long.parseLong(args[4]));
+        HeadlessRunner runner = new HeadlessRunner(gridWorld);
+        runner.newGame(pattern, doves, hawks, 0.05);
+        if (args.length > 5)
+            runner.recordMetrics(Paths.get(args[5]));
+
+        long start = System.nanoTime();
+        long turnsRun = runner.run(turns);
+        runner.finish();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (args.length > 6)
+            gridWorld.lineage.writeTree(Paths.get(args[6]));
+
+        System.out.println("Turns run: " + turnsRun + " in " + seconds + "s (" + (long) (turnsRun / seconds) +
+                " turns/s)");
+        System.out.println("Doves: " + runner.countAgents(StrategyRegistry.DOVE) +
+                ", Hawks: " + runner.countAgents(StrategyRegistry.HAWK));
+    }
+}
@@ -1,10 +1,11 @@
 package GameLogic;
 
 /**
- * Options for how loyal kin will be to each other.
- * None: parent and child will immediately treat each other as strangers
- * Cool-off: parent and child will only play Dove toward each other for 10 moves
- * Eternal: parent and child will only ever play Dove toward each other
+ * Options for how loyal kin will be to each other. Kin are an agent and its descendants up to KIN_GENERATIONS down,
+ * by default just parent and child.
+ * None: kin will immediately treat each other as strangers
+ * Cool-off: kin will only play Dove toward each other for KIN_COOL_OFF_TURNS turns after the younger is born
+ * Eternal: kin will only ever play Dove toward each other
  */
 public enum KinLoyalty {
     NONE, COOL_OFF, ETERNAL
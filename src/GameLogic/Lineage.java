@@ -0,0 +1,191 @@
+package GameLogic;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The family tree of every agent that has entered a world, alive or dead, for telling kin apart and for analysing
+ * genealogy after a run.
+ *
+ * Agent ids are handed out in order, so the tree is a few primitive arrays indexed by id: each agent's parent, the
+ * turn it was born, its generation (0 for agents placed in the world, 1 for their children and so on) and the founder
+ * its line goes back to. Nothing is kept per agent that grows with the depth of the tree, so a run with millions of
+ * births costs a few dozen bytes per birth
+ */
+public class Lineage {
+
+    public static final int NONE = -1;          // parent of a founder
+
+    private int firstId = 0;                    // id of the first agent since the tree was last cleared
+    private int size = 0;
+    private int[] parent = new int[16];
+    private int[] generation = new int[16];
+    private int[] founder = new int[16];
+    private long[] birthTurn = new long[16];
+
+    // Forget everyone, starting a new tree from the agent with the given id
+    public void clear(int firstId) {
+        this.firstId = firstId;
+        size = 0;
+    }
+
+    // Record an agent placed in the world rather than born into it
+    public void addFounder(int id, long turn) {
+        int i = append(id);
+        parent[i] = NONE;
+        generation[i] = 0;
+        founder[i] = id;
+        birthTurn[i] = turn;
+    }
+
+    // Record an agent born to a parent already in the tree
+    public void addChild(int id, int parentId, long turn) {
+        int p = indexOf(parentId);
+        int i = append(id);
+        parent[i] = parentId;
+        generation[i] = generation[p] + 1;
+        founder[i] = founder[p];
+        birthTurn[i] = turn;
+    }
+
+    // Whether an agent is in the tree
+    public boolean contains(int id) {
+        return id >= firstId && id - firstId < size;
+    }
+
+    // Number of agents in the tree
+    public int size() {
+        return size;
+    }
+
+    public int parent(int id) {
+        return parent[indexOf(id)];
+    }
+
+    public int generation(int id) {
+        return generation[indexOf(id)];
+    }
+
+    public int founder(int id) {
+        return founder[indexOf(id)];
+    }
+
+    public long birthTurn(int id) {
+        return birthTurn[indexOf(id)];
+    }
+
+    /**
+     * Whether one agent is the other's ancestor, at most a number of generations back. Takes at most that many steps
+     * @param generations 1 for parents, 2 for parents and grandparents, etc
+     */
+    public boolean isAncestor(int ancestor, int id, int generations) {
+        int a = indexOf(ancestor), i = indexOf(id);
+        int up = generation[i] - generation[a];
+        if (up < 1 || up > generations || founder[i] != founder[a])
+            return false;
+        for (; up > 0; up--)
+            id = parent[id - firstId];
+        return id == ancestor;
+    }
+
+    /**
+     * Whether two agents share an ancestor (or are one another's ancestor) at most a number of generations back from
+     * each of them, so siblings are kin within 1 generation and cousins within 2. Agents from different founders are
+     * told apart straight away; otherwise takes at most that many steps
+     */
+    public boolean areKin(int a, int b, int generations) {
+        if (a == b)
+            return true;
+        int ia = indexOf(a), ib = indexOf(b);
+        if (founder[ia] != founder[ib])
+            return false;
+        // bring the younger generation up level with the older one, then climb both until they meet
+        int deeper = Math.abs(generation[ia] - generation[ib]);
+        if (deeper > generations)
+            return false;
+        if (generation[ia] < generation[ib]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        for (int up = 0; up < deeper; up++)
+            a = parent[a - firstId];
+        for (int up = deeper; a != b; up++) {
+            if (up == generations)
+                return false;
+            a = parent[a - firstId];
+            b = parent[b - firstId];
+        }
+        return true;
+    }
+
+    /**
+     * Write the whole tree as CSV, one row per agent: id, parent (-1 for founders), founder, generation and birth turn
+     */
+    public void writeTree(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("id,parent,founder,generation,birth_turn\n");
+            StringBuilder row = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                row.setLength(0);
+                row.append(firstId + i).append(',').append(parent[i]).append(',').append(founder[i]).append(',')
+                        .append(generation[i]).append(',').append(birthTurn[i]).append('\n');
+                out.append(row);
+            }
+        }
+    }
+
+    private int indexOf(int id) {
+        if (!contains(id))
+            throw new IllegalArgumentException("Agent " + id + " isn't in the family tree");
+        return id - firstId;
+    }
+
+    // Make room for the next agent, which must have the next id
+    private int append(int id) {
+        if (id != firstId + size)
+            throw new IllegalArgumentException("Agents must be added in the order of their ids");
+        if (size == parent.length) {
+            int capacity = size * 2;
+            parent = Arrays.copyOf(parent, capacity);
+            generation = Arrays.copyOf(generation, capacity);
+            founder = Arrays.copyOf(founder, capacity);
+            birthTurn = Arrays.copyOf(birthTurn, capacity);
+        }
+        return size++;
+    }
+
+    // Number of bytes writeTo() will write
+    public long snapshotSize() {
+        return 2 * Integer.BYTES + (long) size * (3 * Integer.BYTES + Long.BYTES);
+    }
+
+    public void writeTo(SnapshotOutput out) throws IOException {
+        out.putInt(firstId);
+        out.putInt(size);
+        out.put(parent, 0, size);
+        out.put(generation, 0, size);
+        out.put(founder, 0, size);
+        for (int i = 0; i < size; i++)
+            out.putLong(birthTurn[i]);
+    }
+
+    // Restore a tree saved by writeTo(), replacing this one
+    public void readFrom(SnapshotInput in) throws IOException {
+        firstId = in.getInt();
+        size = in.getInt();
+        int capacity = Math.max(16, size);
+        parent = new int[capacity];
+        generation = new int[capacity];
+        founder = new int[capacity];
+        birthTurn = new long[capacity];
+        in.get(parent, 0, size);
+        in.get(generation, 0, size);
+        in.get(founder, 0, size);
+        for (int i = 0; i < size; i++)
+            birthTurn[i] = in.getLong();
+    }
+}
@@ -0,0 +1,238 @@
+package GameLogic;
+
+import Agents.Agent;
+import Agents.Strategy;
+import Agents.StrategyRegistry;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Records population statistics at the end of every turn, and streams them to a compact binary file.
+ *
+ * Each turn's statistics are a row of primitive values, stored column by column in arrays. Recording a turn is only a
+ * handful of array writes; nothing is allocated and nothing touches the disk until a whole batch of turns has been
+ * recorded. The batch is then written in one go, a column at a time, through a FileChannel.
+ *
+ * The file starts with a header (MAGIC, VERSION, number of columns), followed by any number of batches. Each batch is
+ * its row count followed by every column in order: turn as longs, mean food as floats, everything else as ints.
+ * read() loads a whole file back into a Series
+ */
+public class MetricsRecorder implements Closeable {
+
+    public static final int MAGIC = 0x48444d54;    // "HDMT"
+    public static final int VERSION = 3;
+    public static final int DEFAULT_BATCH = 4096;
+
+    // Column order in the file; TURN is a long column and MEAN_FOOD a float column
+    static final int TURN = 0, DOVES = 1, HAWKS = 2, BIRTHS = 3, DEATHS = 4, FOOD_ON_BOARD = 5, MEAN_FOOD = 6,
+            MEALS = 7, DOVE_DOVE = 8, HAWK_DOVE = 9, HAWK_HAWK = 10, CHANGED_CHUNKS = 11, AGENTS = 12;
+    static final int COLUMNS = 13;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int batch;
+    private int rows = 0;
+
+    // The current batch, one array per column
+    private final long[] turn;
+    private final int[][] counts;       // every int column, indexed by column - 1 (MEAN_FOOD's slot is unused)
+    private final float[] meanFood;
+
+    public MetricsRecorder(Path file) throws IOException {
+        this(file, DEFAULT_BATCH);
+    }
+
+    /**
+     * Start a new metrics file, replacing any existing file
+     * @param file where to write
+     * @param batch number of turns to hold in memory before writing them out
+     */
+    public MetricsRecorder(Path file, int batch) throws IOException {
+        if (batch < 1)
+            throw new IllegalArgumentException("Batch size must be positive");
+        this.batch = batch;
+        this.turn = new long[batch];
+        this.counts = new int[COLUMNS - 1][batch];
+        this.meanFood = new float[batch];
+        this.buffer = ByteBuffer.allocateDirect(Integer.BYTES + batch * (Long.BYTES + (COLUMNS - 1) * Integer.BYTES));
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(COLUMNS).flip();
+        write();
+    }
+
+    /**
+     * Record the turn a world has just played. Call after the turn is finished and before the next one starts
+     */
+    public void record(GridWorld world) throws IOException {
+        int doves = 0, hawks = 0;
+        long food = 0;
+        for (int i = 0; i < world.agents.size(); i++) {
+            Agent agent = world.agents.get(i);
+            if (agent.getStrategy() == StrategyRegistry.HAWK)
+                hawks++;
+            else if (agent.getStrategy() == StrategyRegistry.DOVE)
+                doves++;
+            food += agent.food;
+        }
+
+        int doveDove = 0, hawkDove = 0, hawkHawk = 0;
+        ContestResolver contests = world.contests;
+        int hawk = Strategy.HAWK.ordinal();
+        for (int i = 0; i < contests.count; i++) {
+            int hawksInContest = (contests.moveA[i] == hawk ? 1 : 0) + (contests.moveB[i] == hawk ? 1 : 0);
+            if (hawksInContest == 0)
+                doveDove++;
+            else if (hawksInContest == 1)
+                hawkDove++;
+            else
+                hawkHawk++;
+        }
+
+        turn[rows] = world.turn;
+        counts[DOVES - 1][rows] = doves;
+        counts[HAWKS - 1][rows] = hawks;
+        counts[BIRTHS - 1][rows] = world.turnBirths;
+        counts[DEATHS - 1][rows] = world.turnDeaths;
+        counts[FOOD_ON_BOARD - 1][rows] = world.tiles.foodCount();
+        meanFood[rows] = world.agents.size() == 0 ? 0f : (float) food / world.agents.size();
+        counts[MEALS - 1][rows] = world.turnMeals;
+        counts[DOVE_DOVE - 1][rows] = doveDove;
+        counts[HAWK_DOVE - 1][rows] = hawkDove;
+        counts[HAWK_HAWK - 1][rows] = hawkHawk;
+        counts[CHANGED_CHUNKS - 1][rows] = world.changedChunks.size();
+        counts[AGENTS - 1][rows] = world.agents.size();
+        if (++rows == batch)
+            flush();
+    }
+
+    // Write out every turn recorded so far
+    public void flush() throws IOException {
+        if (rows == 0)
+            return;
+        buffer.clear();
+        buffer.putInt(rows);
+        for (int i = 0; i < rows; i++)
+            buffer.putLong(turn[i]);
+        for (int column = DOVES; column < COLUMNS; column++) {
+            if (column == MEAN_FOOD)
+                for (int i = 0; i < rows; i++)
+                    buffer.putFloat(meanFood[i]);
+            else
+                for (int i = 0; i < rows; i++)
+                    buffer.putInt(counts[column - 1][i]);
+        }
+        buffer.flip();
+        write();
+        rows = 0;
+    }
+
+    private void write() throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * A whole metrics file, loaded back into memory column by column
+     */
+    public static class Series {
+        public int length = 0;
+        public long[] turn = new long[0];
+        public int[] agents = new int[0];       // everyone in play, whatever strategy they play
+        public int[] doves = new int[0];        // agents playing pure Dove
+        public int[] hawks = new int[0];        // agents playing pure Hawk
+        public int[] births = new int[0];
+        public int[] deaths = new int[0];
+        public int[] foodOnBoard = new int[0];
+        public float[] meanFood = new float[0];     // over every agent in play
+        public int[] meals = new int[0];        // food eaten without a contest
+        public int[] doveDove = new int[0];     // contests between two Doves
+        public int[] hawkDove = new int[0];
+        public int[] hawkHawk = new int[0];
+        public int[] changedChunks = new int[0];    // chunks of the world where anything happened
+
+        private void grow(int capacity) {
+            turn = Arrays.copyOf(turn, capacity);
+            doves = Arrays.copyOf(doves, capacity);
+            hawks = Arrays.copyOf(hawks, capacity);
+            births = Arrays.copyOf(births, capacity);
+            deaths = Arrays.copyOf(deaths, capacity);
+            foodOnBoard = Arrays.copyOf(foodOnBoard, capacity);
+            meanFood = Arrays.copyOf(meanFood, capacity);
+            meals = Arrays.copyOf(meals, capacity);
+            doveDove = Arrays.copyOf(doveDove, capacity);
+            hawkDove = Arrays.copyOf(hawkDove, capacity);
+            hawkHawk = Arrays.copyOf(hawkHawk, capacity);
+            changedChunks = Arrays.copyOf(changedChunks, capacity);
+            agents = Arrays.copyOf(agents, capacity);
+        }
+
+        private int[] intColumn(int column) {
+            switch (column) {
+                case DOVES: return doves;
+                case HAWKS: return hawks;
+                case BIRTHS: return births;
+                case DEATHS: return deaths;
+                case FOOD_ON_BOARD: return foodOnBoard;
+                case MEALS: return meals;
+                case DOVE_DOVE: return doveDove;
+                case HAWK_DOVE: return hawkDove;
+                case HAWK_HAWK: return hawkHawk;
+                case CHANGED_CHUNKS: return changedChunks;
+                default: return agents;
+            }
+        }
+    }
+
+    // Load a file written by a MetricsRecorder
+    public static Series read(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer data = ByteBuffer.allocate((int) in.size());
+            while (data.hasRemaining())
+                if (in.read(data) < 0)
+                    throw new EOFException("Metrics file ended early");
+            data.flip();
+
+            if (data.getInt() != MAGIC || data.getInt() != VERSION || data.getInt() != COLUMNS)
+                throw new IOException("Not a metrics file, or from an incompatible version");
+            Series series = new Series();
+            while (data.hasRemaining()) {
+                int rows = data.getInt();
+                int start = series.length;
+                series.length += rows;
+                if (series.length > series.turn.length)
+                    series.grow(Math.max(series.length, series.turn.length * 2));
+                for (int i = start; i < series.length; i++)
+                    series.turn[i] = data.getLong();
+                for (int column = DOVES; column < COLUMNS; column++) {
+                    if (column == MEAN_FOOD)
+                        for (int i = start; i < series.length; i++)
+                            series.meanFood[i] = data.getFloat();
+                    else {
+                        int[] values = series.intColumn(column);
+                        for (int i = start; i < series.length; i++)
+                            values[i] = data.getInt();
+                    }
+                }
+            }
+            series.grow(series.length);
+            return series;
+        }
+    }
+}
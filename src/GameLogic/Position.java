@@ -13,10 +13,16 @@ public class Position {
         this.y = y;
     }
 
-    // Get array of Positions adjacent to this position
-    Position[] getAdjacentPositions() {
-        return new Position[] {new Position(this.x + 1, this.y), new Position(this.x - 1, this.y),
-                new Position(this.x, this.y - 1), new Position(this.x, this.y + 1)};
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Position))
+            return false;
+        return x == ((Position) other).x && y == ((Position) other).y;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * x + y;
     }
 
     public String getCoords(){
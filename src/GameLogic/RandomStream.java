@@ -0,0 +1,109 @@
+package GameLogic;
+
+/**
+ * Seedable, splittable source of random numbers (the SplitMix64 algorithm also behind java.util.SplittableRandom).
+ *
+ * Every part of the simulation that needs randomness gets its own stream, either split from a parent stream or derived
+ * from a seed plus a key such as an agent id. Streams are never shared between threads, so there's no contention, and
+ * a run started from a given seed plays out identically however many threads it's spread over. Unlike
+ * SplittableRandom, a stream's state can be read and restored
+ */
+public class RandomStream {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long seed;
+    private final long gamma;           // always odd
+
+    public RandomStream(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * Recreate a stream from its saved state
+     * @param seed a value previously returned by getSeed()
+     * @param gamma a value previously returned by getGamma()
+     */
+    public RandomStream(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma | 1L;
+    }
+
+    /**
+     * A stream for one member of a family, e.g. one agent or one chunk of the world, independent of every other member
+     * and of the order members are created in
+     * @param seed seed shared by the whole family
+     * @param key identifies the member within the family
+     */
+    public static RandomStream forKey(long seed, long key) {
+        return new RandomStream(mix64(seed ^ mix64(key * GOLDEN_GAMMA + GOLDEN_GAMMA)));
+    }
+
+    // A new stream, statistically independent of this one, which also advances this one
+    public RandomStream split() {
+        return new RandomStream(nextLong(), mixGamma(nextSeed()));
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getGamma() {
+        return gamma;
+    }
+
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    public int nextInt() {
+        return (int) (mix64(nextSeed()) >>> 32);
+    }
+
+    // Uniformly distributed int in [0, bound)
+    public int nextInt(int bound) {
+        if (bound <= 0)
+            throw new IllegalArgumentException("bound must be positive");
+        int r = nextInt();
+        int m = bound - 1;
+        if ((bound & m) == 0)           // power of 2
+            return r & m;
+        // reject values from the incomplete last block of size bound, so every result is equally likely
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = nextInt() >>> 1)
+            ;
+        return r;
+    }
+
+    // Uniformly distributed double in [0, 1)
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    // Uniformly distributed float in [0, 1)
+    public float nextFloat() {
+        return (nextInt() >>> 8) * 0x1.0p-24f;
+    }
+
+    public boolean nextBoolean() {
+        return nextInt() < 0;
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // Odd gamma with enough bit transitions to make a good stream
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
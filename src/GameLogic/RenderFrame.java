@@ -0,0 +1,87 @@
+package GameLogic;
+
+import Agents.Agent;
+import Tiles.ChunkSet;
+import Tiles.TileGrid;
+
+import java.util.Arrays;
+
+/**
+ * Everything the view needs to draw one turn, copied out of a GridWorld so it can be drawn on the JavaFX thread while
+ * the simulation carries on in the background.
+ *
+ * Food is only copied for the chunks that changed since the previous frame, so a frame is cheap to capture however big
+ * the world is. Frames are reused: capture() overwrites the lot, only growing its arrays when the world has grown
+ */
+public class RenderFrame {
+
+    public long turn;
+
+    public int agentCount;
+    public int[] agentX = new int[16];
+    public int[] agentY = new int[16];
+    public int[] strategies = new int[16];      // StrategyRegistry number of each agent's strategy
+
+    public int goalCount;
+    public int[] goals = new int[16];           // tiles agents are heading for
+
+    public int chunkCount;
+    public int[] chunks = new int[16];          // chunks changed since the previous frame
+    public int[] foodEnd = new int[16];         // food in chunks[i] is foodCells[foodEnd[i - 1]] to foodCells[foodEnd[i] - 1]
+    public int[] foodCells = new int[64];
+
+    /**
+     * Copy a world's state, as of the end of its last turn
+     * @param changed chunks changed since the previous frame; cleared once their food is copied
+     */
+    public void capture(GridWorld world, ChunkSet changed) {
+        turn = world.turn;
+
+        int agents = world.agents.size();
+        if (agentX.length < agents) {
+            int capacity = Math.max(agents, agentX.length * 2);
+            agentX = Arrays.copyOf(agentX, capacity);
+            agentY = Arrays.copyOf(agentY, capacity);
+            strategies = Arrays.copyOf(strategies, capacity);
+            goals = Arrays.copyOf(goals, capacity);
+        }
+        agentCount = 0;
+        goalCount = 0;
+        for (Agent agent : world.agents) {
+            agentX[agentCount] = agent.position.x;
+            agentY[agentCount] = agent.position.y;
+            strategies[agentCount++] = agent.getStrategy();
+            if (agent.goal != Agent.NO_GOAL)
+                goals[goalCount++] = agent.goal;
+        }
+
+        TileGrid tiles = world.tiles;
+        chunkCount = changed.size();
+        if (chunks.length < chunkCount) {
+            chunks = Arrays.copyOf(chunks, Math.max(chunkCount, chunks.length * 2));
+            foodEnd = Arrays.copyOf(foodEnd, chunks.length);
+        }
+        int food = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            int chunk = changed.get(i);
+            chunks[i] = chunk;
+            foodEnd[i] = food;
+            if (!tiles.isCreated(chunk))
+                continue;       // cleared by a new game, and not generated again yet
+            int origin = tiles.chunkOrigin(chunk);
+            int minX = tiles.x(origin), maxX = Math.min(tiles.width, minX + TileGrid.CHUNK_SIZE);
+            int minY = tiles.y(origin), maxY = Math.min(tiles.height, minY + TileGrid.CHUNK_SIZE);
+            for (int y = minY; y < maxY; y++) {
+                for (int x = minX; x < maxX; x++) {
+                    if (tiles.hasFood(x, y)) {
+                        if (food == foodCells.length)
+                            foodCells = Arrays.copyOf(foodCells, food * 2);
+                        foodCells[food++] = tiles.index(x, y);
+                    }
+                }
+            }
+            foodEnd[i] = food;
+        }
+        changed.clear();
+    }
+}
@@ -0,0 +1,151 @@
+package GameLogic;
+
+import Tiles.TileGrid;
+
+import java.util.Arrays;
+
+/**
+ * Reusable scratch space to run Agent depth-limited BFS without allocating anything per search.
+ *
+ * Each thread gets its own workspace via get(). A search only ever reaches tiles within max_depth steps of its start,
+ * so visited/parent bookkeeping covers just that window of the world rather than the whole grid. Visited tiles are
+ * stamped with the current search's epoch, so nothing needs clearing between searches
+ */
+public class SearchWorkspace {
+
+    private static final ThreadLocal<SearchWorkspace> WORKSPACES = ThreadLocal.withInitial(SearchWorkspace::new);
+
+    // Window of the world covered by the current search
+    private int originX, originY, windowWidth;
+
+    private int[] visited = new int[0];     // epoch at which each window slot was last discovered
+    private int[] parent = new int[0];      // cell each window slot was discovered from
+    private int epoch = 0;
+
+    private int[] queue = new int[16];      // FIFO ring buffer of cells, capacity always a power of 2
+    private int head, tail;
+
+    public final int[] candidates = new int[4];     // scratch space for choosing between adjacent tiles
+
+    // Get the workspace for the current thread
+    public static SearchWorkspace get() {
+        return WORKSPACES.get();
+    }
+
+    /**
+     * Breadth-first search outward from a tile for the nearest tile with food, up to a max number of steps away
+     * @param tiles the grid of world tiles
+     * @param start cell to search from. Food on this tile itself is ignored
+     * @param max_depth the max search depth to continue BFS to
+     * @return the cell of the nearest food found, or -1 if none is within reach
+     */
+    public int search(TileGrid tiles, int start, int max_depth) {
+        int startX = tiles.x(start);
+        int startY = tiles.y(start);
+        prepare(tiles, startX, startY, max_depth);
+
+        head = tail = 0;
+        discover(tiles, start, -1);
+        enqueue(start);
+
+        int depth = 0;
+        while (head != tail && depth < max_depth) {
+            // expand one whole depth level at a time
+            int levelSize = (tail - head) & (queue.length - 1);
+            depth++;
+            for (int i = 0; i < levelSize; i++) {
+                int cell = queue[head];
+                head = (head + 1) & (queue.length - 1);
+
+                // successors must be walkable and undiscovered
+                for (int m = tiles.neighbours(cell); m != 0; m &= m - 1) {
+                    int found = tryExpand(tiles, cell, tiles.adjacent(cell, Integer.numberOfTrailingZeros(m)));
+                    if (found != -1)
+                        return found;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write the route found by the last search as a sequence of moves from the search start to the goal. Each move is
+     * a direction, 0 to 3 for right, left, up and down, packed 32 to a long with the first move in the lowest bits
+     * @param tiles the grid of world tiles
+     * @param goal a cell found by the last call to search()
+     * @param moves array to write into, which must have space for at least max_depth moves
+     * @return the number of moves written
+     */
+    public int tracePath(TileGrid tiles, int goal, long[] moves) {
+        int length = 0;
+        for (int cell = goal; parent[slot(tiles, cell)] != -1; cell = parent[slot(tiles, cell)])
+            length++;
+
+        Arrays.fill(moves, 0, (length + 31) >>> 5, 0L);
+        int i = length;
+        for (int cell = goal; parent[slot(tiles, cell)] != -1; ) {
+            int from = parent[slot(tiles, cell)];
+            int step = cell - from;
+            long direction = step == 1 ? 0 : step == -1 ? 1 : step < 0 ? 2 : 3;
+            i--;
+            moves[i >>> 5] |= direction << ((i & 31) << 1);
+            cell = from;
+        }
+        return length;
+    }
+
+    // Set up the window and queue for a new search, growing arrays only if this is the largest search so far
+    private void prepare(TileGrid tiles, int startX, int startY, int max_depth) {
+        originX = Math.max(0, startX - max_depth);
+        originY = Math.max(0, startY - max_depth);
+        windowWidth = Math.min(tiles.width - 1, startX + max_depth) - originX + 1;
+        int windowHeight = Math.min(tiles.height - 1, startY + max_depth) - originY + 1;
+
+        int area = windowWidth * windowHeight;
+        if (visited.length < area) {
+            visited = new int[area];
+            parent = new int[area];
+            epoch = 0;
+        }
+
+        // any two consecutive BFS levels within max_depth of the start hold at most 8 * max_depth + 4 tiles. Keep the
+        // ring strictly bigger than that so a full queue is never mistaken for an empty one
+        int frontier = (int) Math.min(area, 8L * max_depth + 4);
+        if (queue.length <= frontier)
+            queue = new int[Integer.highestOneBit(frontier) << 1];
+
+        // a fresh epoch marks every slot undiscovered; on wrap-around, genuinely clear the old stamps
+        if (++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            epoch = 1;
+        }
+    }
+
+    // Discover a walkable neighbouring tile if it's not been seen yet. Returns its cell if it has food, otherwise -1
+    private int tryExpand(TileGrid tiles, int from, int cell) {
+        if (visited[slot(tiles, cell)] == epoch)
+            return -1;
+
+        discover(tiles, cell, from);
+        if (tiles.hasFood(cell))
+            return cell;
+        enqueue(cell);
+        return -1;
+    }
+
+    private void discover(TileGrid tiles, int cell, int from) {
+        int slot = slot(tiles, cell);
+        visited[slot] = epoch;
+        parent[slot] = from;
+    }
+
+    private void enqueue(int cell) {
+        queue[tail] = cell;
+        tail = (tail + 1) & (queue.length - 1);
+    }
+
+    // Position of a cell within the current search window
+    private int slot(TileGrid tiles, int cell) {
+        return (tiles.y(cell) - originY) * windowWidth + (tiles.x(cell) - originX);
+    }
+}
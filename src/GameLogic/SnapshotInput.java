@@ -0,0 +1,104 @@
+package GameLogic;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a snapshot file written by a SnapshotOutput, through memory-mapped windows
+ */
+public class SnapshotInput implements Closeable {
+
+    private final FileChannel channel;
+    private final long size;
+    private long windowStart = 0;              // file offset of the current window
+    private MappedByteBuffer window;
+
+    public SnapshotInput(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        map();
+    }
+
+    // Move the window along to start wherever the current one is up to
+    private void map() throws IOException {
+        if (window != null)
+            windowStart += window.position();
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                Math.min(SnapshotOutput.WINDOW, size - windowStart));
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (window.remaining() < bytes)
+            map();
+        if (window.remaining() < bytes)
+            throw new EOFException("Snapshot ended early");
+    }
+
+    public byte getByte() throws IOException {
+        ensure(Byte.BYTES);
+        return window.get();
+    }
+
+    public int getInt() throws IOException {
+        ensure(Integer.BYTES);
+        return window.getInt();
+    }
+
+    public long getLong() throws IOException {
+        ensure(Long.BYTES);
+        return window.getLong();
+    }
+
+    public double getDouble() throws IOException {
+        ensure(Double.BYTES);
+        return window.getDouble();
+    }
+
+    public void get(byte[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(1);
+            int n = Math.min(length, window.remaining());
+            window.get(values, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void get(int[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(Integer.BYTES);
+            int n = Math.min(length, window.remaining() / Integer.BYTES);
+            window.asIntBuffer().get(values, offset, n);
+            window.position(window.position() + n * Integer.BYTES);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void get(float[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(Float.BYTES);
+            int n = Math.min(length, window.remaining() / Float.BYTES);
+            window.asFloatBuffer().get(values, offset, n);
+            window.position(window.position() + n * Float.BYTES);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    // Recreate a stream written by SnapshotOutput.putRandom()
+    public RandomStream getRandom() throws IOException {
+        long seed = getLong();
+        return new RandomStream(seed, getLong());
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
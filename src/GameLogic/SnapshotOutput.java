@@ -0,0 +1,118 @@
+package GameLogic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a snapshot file of a known size through memory-mapped windows. Values are copied straight into the OS page
+ * cache, with no intermediate buffers or system call per write, and arrays are copied in bulk. The file is mapped a
+ * window at a time, so snapshots can be bigger than a single mapping allows
+ */
+public class SnapshotOutput implements Closeable {
+
+    static final int WINDOW = 1 << 26;         // bytes mapped at once
+
+    private final FileChannel channel;
+    private final long size;
+    private long windowStart = 0;              // file offset of the current window
+    private MappedByteBuffer window;
+
+    /**
+     * Start a new file, replacing any existing file
+     * @param file where to write
+     * @param size exact number of bytes that will be written
+     */
+    public SnapshotOutput(Path file, long size) throws IOException {
+        this.size = size;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        map();
+    }
+
+    // Move the window along to start wherever the current one is up to
+    private void map() throws IOException {
+        if (window != null)
+            windowStart += window.position();
+        window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, Math.min(WINDOW, size - windowStart));
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (window.remaining() < bytes)
+            map();
+        if (window.remaining() < bytes)
+            throw new IOException("Wrote past the end of the snapshot");
+    }
+
+    public void putByte(byte value) throws IOException {
+        ensure(Byte.BYTES);
+        window.put(value);
+    }
+
+    public void putInt(int value) throws IOException {
+        ensure(Integer.BYTES);
+        window.putInt(value);
+    }
+
+    public void putLong(long value) throws IOException {
+        ensure(Long.BYTES);
+        window.putLong(value);
+    }
+
+    public void putDouble(double value) throws IOException {
+        ensure(Double.BYTES);
+        window.putDouble(value);
+    }
+
+    public void put(byte[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(1);
+            int n = Math.min(length, window.remaining());
+            window.put(values, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void put(int[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(Integer.BYTES);
+            int n = Math.min(length, window.remaining() / Integer.BYTES);
+            window.asIntBuffer().put(values, offset, n);
+            window.position(window.position() + n * Integer.BYTES);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public void put(float[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(Float.BYTES);
+            int n = Math.min(length, window.remaining() / Float.BYTES);
+            window.asFloatBuffer().put(values, offset, n);
+            window.position(window.position() + n * Float.BYTES);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    // Write a stream's state, so it can carry on exactly where it left off when read back
+    public void putRandom(RandomStream random) throws IOException {
+        putLong(random.getSeed());
+        putLong(random.getGamma());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (windowStart + window.position() != size)
+                throw new IOException("Snapshot was " + (windowStart + window.position()) + " bytes, expected " + size);
+            window.force();
+        } finally {
+            channel.close();
+        }
+    }
+}
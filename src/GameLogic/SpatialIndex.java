@@ -0,0 +1,252 @@
+package GameLogic;
+
+import Tiles.TileGrid;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid index of which agents are where. The world is divided into square buckets, and each bucket keeps a
+ * linked list of the agents in it. Adding, removing and moving an agent are all O(1), and a neighbourhood query only
+ * looks at the buckets it overlaps, so it costs time proportional to the number of agents nearby rather than the
+ * number in the world.
+ *
+ * Each agent indexed takes an entry, and the lists are threaded through arrays indexed by entry. Entries are found
+ * from agent ids through an open-addressing table, and a removed agent's entry is reused by the next one inserted, so
+ * memory follows the number of agents indexed at once, not the number of ids ever issued. The lists can be walked
+ * without allocating, from first() along next(), and an entry stays valid while others are removed.
+ *
+ * With a bucket size of 1 each bucket is a single tile, and the index answers "which agents are on this tile" exactly
+ */
+public class SpatialIndex {
+
+    public static final int NONE = -1;
+
+    private final TileGrid tiles;
+    private final int bucketSize;           // width and height of each bucket, in tiles
+    private final int bucketsX;             // number of buckets across
+    private final int[] head;               // first entry in each bucket, or NONE
+
+    private int[] table = new int[16];      // entries by their agent's id, with linear probing; NONE where empty
+    private int size = 0;                   // agents indexed
+    private int used = 0;                   // entries ever handed out, free or not
+    private int free = NONE;                // first free entry, with the rest chained through next
+
+    // Per entry
+    private int[] idOf = new int[8];        // agent indexed at each entry
+    private int[] cellOf = new int[8];      // tile it's indexed at
+    private int[] next = new int[8];        // next entry in the same bucket, or NONE
+    private int[] prev = new int[8];        // previous entry in the same bucket, or NONE
+
+    /**
+     * An empty index over a grid's tiles
+     * @param tiles the grid agents are on
+     * @param bucketSize width and height of each bucket, in tiles
+     */
+    public SpatialIndex(TileGrid tiles, int bucketSize) {
+        if (bucketSize < 1)
+            throw new IllegalArgumentException("Bucket size must be positive");
+        this.tiles = tiles;
+        this.bucketSize = bucketSize;
+        this.bucketsX = (tiles.width + bucketSize - 1) / bucketSize;
+        int bucketsY = (tiles.height + bucketSize - 1) / bucketSize;
+        this.head = new int[bucketsX * bucketsY];
+        Arrays.fill(head, NONE);
+        Arrays.fill(table, NONE);
+    }
+
+    private int bucket(int cell) {
+        return tiles.y(cell) / bucketSize * bucketsX + tiles.x(cell) / bucketSize;
+    }
+
+    // Number of agents indexed
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int id) {
+        return entryOf(id) != NONE;
+    }
+
+    // The tile an agent is indexed at, or NONE
+    public int cellOf(int id) {
+        int entry = entryOf(id);
+        return entry == NONE ? NONE : cellOf[entry];
+    }
+
+    public void insert(int id, int cell) {
+        if (entryOf(id) != NONE)
+            throw new IllegalArgumentException("Agent " + id + " is already indexed");
+        int entry;
+        if (free != NONE) {
+            entry = free;
+            free = next[entry];
+        } else {
+            if (used == idOf.length) {
+                int capacity = used * 2;
+                idOf = Arrays.copyOf(idOf, capacity);
+                cellOf = Arrays.copyOf(cellOf, capacity);
+                next = Arrays.copyOf(next, capacity);
+                prev = Arrays.copyOf(prev, capacity);
+            }
+            entry = used++;
+        }
+        idOf[entry] = id;
+        cellOf[entry] = cell;
+        size++;
+        if (size * 2 > table.length) {
+            // keep the table at most half full, so probes stay short
+            int[] old = table;
+            table = new int[old.length * 2];
+            Arrays.fill(table, NONE);
+            for (int e : old)
+                if (e != NONE)
+                    insertEntry(e);
+        }
+        insertEntry(entry);
+        link(entry, bucket(cell));
+    }
+
+    public void remove(int id) {
+        int entry = entryOf(id);
+        if (entry == NONE)
+            throw new IllegalArgumentException("Agent " + id + " isn't indexed");
+        unlink(entry, bucket(cellOf[entry]));
+        removeEntry(id);
+        next[entry] = free;
+        free = entry;
+        size--;
+    }
+
+    // Update where an agent is. Only touches the bucket lists if the agent has crossed into another bucket
+    public void move(int id, int cell) {
+        int entry = entryOf(id);
+        if (entry == NONE)
+            throw new IllegalArgumentException("Agent " + id + " isn't indexed");
+        int from = bucket(cellOf[entry]);
+        int to = bucket(cell);
+        if (from != to) {
+            unlink(entry, from);
+            link(entry, to);
+        }
+        cellOf[entry] = cell;
+    }
+
+    // Remove every agent
+    public void clear() {
+        Arrays.fill(head, NONE);
+        Arrays.fill(table, NONE);
+        size = 0;
+        used = 0;
+        free = NONE;
+    }
+
+    private int slot(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ h >>> 16) & (table.length - 1);
+    }
+
+    private int entryOf(int id) {
+        for (int i = slot(id); ; i = (i + 1) & (table.length - 1)) {
+            int entry = table[i];
+            if (entry == NONE || idOf[entry] == id)
+                return entry;
+        }
+    }
+
+    private void insertEntry(int entry) {
+        int i = slot(idOf[entry]);
+        while (table[i] != NONE)
+            i = (i + 1) & (table.length - 1);
+        table[i] = entry;
+    }
+
+    // Take an agent's entry out of the table, moving later entries back so no probe sequence is broken
+    private void removeEntry(int id) {
+        int mask = table.length - 1;
+        int hole = slot(id);
+        while (idOf[table[hole]] != id)
+            hole = (hole + 1) & mask;
+        table[hole] = NONE;
+        for (int i = (hole + 1) & mask; table[i] != NONE; i = (i + 1) & mask) {
+            int home = slot(idOf[table[i]]);
+            // an entry can fill the hole unless its home slot lies cyclically between the hole and where it is
+            boolean between = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+            if (!between) {
+                table[hole] = table[i];
+                table[i] = NONE;
+                hole = i;
+            }
+        }
+    }
+
+    private void link(int entry, int bucket) {
+        int first = head[bucket];
+        next[entry] = first;
+        prev[entry] = NONE;
+        if (first != NONE)
+            prev[first] = entry;
+        head[bucket] = entry;
+    }
+
+    private void unlink(int entry, int bucket) {
+        if (prev[entry] != NONE)
+            next[prev[entry]] = next[entry];
+        else
+            head[bucket] = next[entry];
+        if (next[entry] != NONE)
+            prev[next[entry]] = prev[entry];
+    }
+
+    /**
+     * First entry in the bucket containing a tile, for walking the bucket without allocating: follow next() until it
+     * returns NONE, reading each agent with idAt() and cellAt(). The bucket may hold agents on other tiles too, unless
+     * the bucket size is 1
+     */
+    public int first(int cell) {
+        return head[bucket(cell)];
+    }
+
+    // The entry after this one in its bucket, or NONE
+    public int next(int entry) {
+        return next[entry];
+    }
+
+    // The agent at an entry
+    public int idAt(int entry) {
+        return idOf[entry];
+    }
+
+    // The tile the agent at an entry is indexed at
+    public int cellAt(int entry) {
+        return cellOf[entry];
+    }
+
+    /**
+     * Find every agent within a number of steps of a tile (Manhattan distance, as agents move)
+     * @param out filled with the ids of agents found, up to its length
+     * @return total number of agents found, which may be more than fit in out
+     */
+    public int within(int x, int y, int radius, int[] out) {
+        int found = 0;
+        int minBucketX = Math.max(0, x - radius) / bucketSize;
+        int maxBucketX = Math.min(tiles.width - 1, x + radius) / bucketSize;
+        int minBucketY = Math.max(0, y - radius) / bucketSize;
+        int maxBucketY = Math.min(tiles.height - 1, y + radius) / bucketSize;
+        for (int by = minBucketY; by <= maxBucketY; by++)
+            for (int bx = minBucketX; bx <= maxBucketX; bx++)
+                for (int entry = head[by * bucketsX + bx]; entry != NONE; entry = next[entry]) {
+                    int cell = cellOf[entry];
+                    if (Math.abs(tiles.x(cell) - x) + Math.abs(tiles.y(cell) - y) <= radius) {
+                        if (found < out.length)
+                            out[found] = idOf[entry];
+                        found++;
+                    }
+                }
+        return found;
+    }
+
+    // Find every agent on a tile, as within() with a radius of 0
+    public int at(int cell, int[] out) {
+        return within(tiles.x(cell), tiles.y(cell), 0, out);
+    }
+}
@@ -0,0 +1,175 @@
+package GameLogic;
+
+import Agents.StrategyRegistry;
+import Tiles.TilePattern;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a parameter sweep: many independent worlds, each with its own settings, spread over a pool of threads.
+ *
+ * Worlds share nothing, so each one runs single-threaded on whichever pool thread picks it up, and a sweep keeps every
+ * core busy by running as many worlds at once as there are threads. Each world's seed is derived from the sweep's seed
+ * and the world's index, so a sweep gives the same results however many threads it runs on
+ */
+public class SweepRunner {
+
+    /**
+     * The outcome of one world in a sweep
+     */
+    public static class Result {
+        public final int index;                 // position of the world's settings in the sweep
+        public final WorldSettings settings;
+        public final long turnsRun;
+        public final int agents;                // survivors, whatever strategy they play
+        public final int doves;
+        public final int hawks;
+        private final int[] strategies;         // survivors playing each StrategyRegistry strategy
+
+        Result(int index, WorldSettings settings, long turnsRun, int[] strategies) {
+            this.index = index;
+            this.settings = settings;
+            this.turnsRun = turnsRun;
+            this.strategies = strategies;
+            int agents = 0;
+            for (int count : strategies)
+                agents += count;
+            this.agents = agents;
+            this.doves = count(StrategyRegistry.DOVE);
+            this.hawks = count(StrategyRegistry.HAWK);
+        }
+
+        // Number of survivors playing a StrategyRegistry strategy
+        public int count(int strategy) {
+            return strategy < strategies.length ? strategies[strategy] : 0;
+        }
+
+        // Fraction of surviving agents that are Hawks, or NaN if everything died
+        public double hawkRatio() {
+            return agents == 0 ? Double.NaN : (double) hawks / agents;
+        }
+    }
+
+    private final int threads;
+    TilePattern pattern = TilePattern.RANDOM_SPARSE;
+    int[] starting = {1, 1};           // agents of each StrategyRegistry strategy to start with
+    double foodDensity = 0.05;
+
+    public SweepRunner(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("A sweep needs at least one thread");
+        this.threads = threads;
+    }
+
+    // Set up how every world in the sweep starts
+    public SweepRunner startWith(TilePattern pattern, int doves, int hawks, double foodDensity) {
+        int[] counts = new int[2];
+        counts[StrategyRegistry.DOVE] = doves;
+        counts[StrategyRegistry.HAWK] = hawks;
+        return startWith(pattern, counts, foodDensity);
+    }
+
+    /**
+     * Set up how every world in the sweep starts, with any registered strategies
+     * @param counts number of agents to start with playing each strategy, indexed by StrategyRegistry number
+     */
+    public SweepRunner startWith(TilePattern pattern, int[] counts, double foodDensity) {
+        this.pattern = pattern;
+        this.starting = counts.clone();
+        this.foodDensity = foodDensity;
+        return this;
+    }
+
+    /**
+     * Run one world per settings object, each for up to the given number of turns
+     * @param sweep settings for each world. Each world gets its own copy, so these are never modified
+     * @param turns max number of turns to run each world for
+     * @param seed seed for the whole sweep
+     * @return results in the same order as sweep
+     */
+    public List<Result> run(List<WorldSettings> sweep, long turns, long seed) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<>(sweep.size());
+            for (int i = 0; i < sweep.size(); i++) {
+                int index = i;
+                WorldSettings settings = sweep.get(i);
+                futures.add(pool.submit(() -> runWorld(index, settings, turns, seed)));
+            }
+            List<Result> results = new ArrayList<>(sweep.size());
+            for (Future<Result> future : futures)
+                results.add(future.get());
+            return results;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A world in the sweep failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Result runWorld(int index, WorldSettings settings, long turns, long seed) {
+        GridWorld gridWorld = new GridWorld(settings);
+        gridWorld.parallelAgentSteps = false;   // the sweep is already using every thread
+        gridWorld.parallelGeneration = false;
+        gridWorld.setSeed(RandomStream.forKey(seed, index).nextLong());
+        HeadlessRunner runner = new HeadlessRunner(gridWorld);
+        runner.newGame(pattern, 0, 0, foodDensity);
+        for (int strategy = 0; strategy < starting.length; strategy++)
+            runner.addAgents(strategy, starting[strategy]);
+        long turnsRun = runner.run(turns);
+        int[] survivors = new int[StrategyRegistry.count()];
+        for (int strategy = 0; strategy < survivors.length; strategy++)
+            survivors[strategy] = runner.countAgents(strategy);
+        return new Result(index, settings, turnsRun, survivors);
+    }
+
+    /**
+     * Every combination of the given parameter values, with all other settings at their defaults
+     */
+    public static List<WorldSettings> grid(int[] foodValues, int[] gameLossCosts, int[] spawnThresholds,
+                                           double[] foodGrowthRates, KinLoyalty[] kinLoyalties) {
+        WorldSettings defaults = new WorldSettings();
+        List<WorldSettings> sweep = new ArrayList<>();
+        for (int foodValue : foodValues)
+            for (int gameLossCost : gameLossCosts)
+                for (int spawnThreshold : spawnThresholds)
+                    for (double foodGrowthRate : foodGrowthRates)
+                        for (KinLoyalty kinLoyalty : kinLoyalties)
+                            sweep.add(new WorldSettings(defaults.STARTING_FOOD, defaults.STEPS_TO_LOSE_FOOD, foodValue,
+                                    foodGrowthRate, spawnThreshold, defaults.SPAWN_COST, defaults.CHILD_START_FOOD,
+                                    gameLossCost, kinLoyalty));
+        return sweep;
+    }
+
+    /**
+     * Run a sweep over every combination of a few values of each parameter, printing results as CSV.
+     * Usage: SweepRunner [turns] [threads] [seed]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        long turns = args.length > 0 ? Long.parseLong(args[0]) : 10000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+
+        List<WorldSettings> sweep = grid(new int[]{2, 3, 5}, new int[]{3, 5, 8}, new int[]{8, 10, 15},
+                new double[]{0.5, 1, 2}, KinLoyalty.values());
+
+        long start = System.nanoTime();
+        List<Result> results = new SweepRunner(threads).run(sweep, turns, seed);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println("foodValue,gameLossCost,spawnThreshold,foodGrowthRate,kinLoyalty,turnsRun,doves,hawks," +
+                "hawkRatio");
+        for (Result result : results) {
+            WorldSettings s = result.settings;
+            System.out.println(s.FOOD_VALUE + "," + s.GAME_LOSS_COST + "," + s.SPAWN_THRESHOLD + "," +
+                    s.FOOD_GROWTH_RATE + "," + s.kinLoyalty + "," + result.turnsRun + "," + result.doves + "," +
+                    result.hawks + "," + result.hawkRatio());
+        }
+        System.err.println(results.size() + " worlds in " + seconds + "s on " + threads + " threads");
+    }
+}
@@ -1,23 +1,25 @@
 package GameLogic;
 
-import Agents.Agent;
-import Agents.DoveAgent;
-import Agents.HawkAgent;
-import Tiles.Tile;
+import Agents.StrategyRegistry;
+import Tiles.TileGrid;
 import Tiles.TilePattern;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.Group;
+import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Button;
 import javafx.scene.layout.HBox;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Circle;
 import javafx.scene.shape.Rectangle;
 import javafx.stage.Stage;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * View class to handle display logic
@@ -30,69 +32,181 @@ public class View extends Application {
     private final Group food = new Group();
     private final Group highlightedFood = new Group();
     private final Group agents = new Group();
+    private final CirclePool highlightPool = new CirclePool(highlightedFood);
+    private final CirclePool agentPool = new CirclePool(agents);
+    private CirclePool[] foodByChunk = new CirclePool[0];    // food in each chunk, so changed chunks can be redrawn alone
+    private Color[] agentColours = new Color[0];    // by strategy, made the first time they're needed
+    private boolean canvasMode = false;     // draw each layer on one Canvas rather than a node per tile, food and agent
+    private double boardWidth, boardHeight;     // size of the board as last drawn, including the offset
 
     /**
      * Draw the game tiles
      */
-    public void drawWorldTiles(Tile[][] worldTiles, int tileSize, int offset) {
+    public void drawWorldTiles(TileGrid worldTiles, int tileSize, int offset) {
 
-        for (int y = 0; y < worldTiles.length; y++) {
-            for (int x = 0; x < worldTiles[0].length; x++) {
-                Rectangle newRec = new Rectangle(x * tileSize + offset, y * tileSize + offset, tileSize, tileSize);
-                if (!worldTiles[x][y].walkable()) {
-                    newRec.setFill(Color.DARKGRAY);
+        boardWidth = worldTiles.width * tileSize + offset;
+        boardHeight = worldTiles.height * tileSize + offset;
+        if (canvasMode) {
+            GraphicsContext gc = canvas(tiles);
+            for (int y = 0; y < worldTiles.height; y++) {
+                for (int x = 0; x < worldTiles.width; x++) {
+                    gc.setFill(worldTiles.walkable(x, y) ? Color.DARKGREEN : Color.DARKGRAY);
+                    gc.fillRect(x * tileSize + offset, y * tileSize + offset, tileSize, tileSize);
+                }
+            }
+            return;
+        }
+
+        // a new game on the same size board just recolours the tiles already there
+        ObservableList<Node> rectangles = tiles.getChildren();
+        boolean reuse = rectangles.size() == worldTiles.width * worldTiles.height;
+        if (!reuse)
+            rectangles.clear();
+        int i = 0;
+        for (int y = 0; y < worldTiles.height; y++) {
+            for (int x = 0; x < worldTiles.width; x++, i++) {
+                Color fill = worldTiles.walkable(x, y) ? Color.DARKGREEN : Color.DARKGRAY;
+                if (reuse) {
+                    ((Rectangle) rectangles.get(i)).setFill(fill);
                 } else {
-                    newRec.setFill(Color.DARKGREEN);
+                    Rectangle newRec = new Rectangle(x * tileSize + offset, y * tileSize + offset, tileSize, tileSize);
+                    newRec.setFill(fill);
+                    rectangles.add(newRec);
                 }
-                tiles.getChildren().add(newRec);
             }
         }
     }
 
-    // Draw all food items on the board
-    public void drawFood(Tile[][] worldTiles, int tileSize, int offset) {
-
-        food.getChildren().clear();
-
-        for (int y = 0; y < worldTiles.length; y++) {
-            for (int x = 0; x < worldTiles[0].length; x++) {
-                // if food on this tile, draw a circle on top
-                if (worldTiles[x][y].hasFood()) {
+    // Remove all food from the board, e.g. for a new game
+    public void clearFood(TileGrid worldTiles) {
 
-                    food.getChildren().add(new Circle(x * tileSize + offset + tileSize / 2,
-                            y * tileSize + offset + tileSize / 2, tileSize / 6, Color.DARKRED));
+        if (canvasMode) {
+            GraphicsContext gc = canvas(food);
+            gc.clearRect(0, 0, gc.getCanvas().getWidth(), gc.getCanvas().getHeight());
+        } else if (foodByChunk.length != worldTiles.chunkCount()) {
+            food.getChildren().clear();
+            foodByChunk = new CirclePool[worldTiles.chunkCount()];
+        } else {
+            for (CirclePool chunkFood : foodByChunk) {
+                if (chunkFood != null) {
+                    chunkFood.begin();
+                    chunkFood.end();
                 }
             }
         }
     }
 
-    public void highlightGoalFood(ArrayList<Agent> currentAgents, int tileSize, int offset) {
+    /**
+     * Draw a turn: every agent and the food it's heading for, and the food in each chunk that has changed
+     */
+    public void drawFrame(RenderFrame frame, TileGrid worldTiles, int tileSize, int offset) {
+
+        drawAgents(frame, tileSize, offset);
+        for (int i = 0; i < frame.chunkCount; i++)
+            drawFood(frame, i, worldTiles, tileSize, offset);
+        highlightGoalFood(frame, worldTiles, tileSize, offset);
+    }
+
+    // Redraw the food in one of the frame's changed chunks
+    private void drawFood(RenderFrame frame, int i, TileGrid worldTiles, int tileSize, int offset) {
 
-        highlightedFood.getChildren().clear();
+        int chunk = frame.chunks[i];
+        int from = i == 0 ? 0 : frame.foodEnd[i - 1];
+        int radius = tileSize / 6;
 
-        for (Agent agent : currentAgents) {
-            if (agent.goal != null) {
-                Position goalFood = agent.goal.tile.position;
-                highlightedFood.getChildren().add(new Circle(goalFood.x * tileSize + offset + tileSize / 2,
-                        goalFood.y * tileSize + offset + tileSize / 2, tileSize / 6, Color.GOLD));
+        if (canvasMode) {
+            int origin = worldTiles.chunkOrigin(chunk);
+            GraphicsContext gc = canvas(food);
+            gc.clearRect(worldTiles.x(origin) * tileSize + offset, worldTiles.y(origin) * tileSize + offset,
+                    TileGrid.CHUNK_SIZE * tileSize, TileGrid.CHUNK_SIZE * tileSize);
+            gc.setFill(Color.DARKRED);
+            for (int f = from; f < frame.foodEnd[i]; f++) {
+                int cell = frame.foodCells[f];
+                gc.fillOval(centre(worldTiles.x(cell), tileSize, offset) - radius,
+                        centre(worldTiles.y(cell), tileSize, offset) - radius, 2 * radius, 2 * radius);
             }
+            return;
         }
+
+        CirclePool chunkFood = foodByChunk[chunk];
+        if (chunkFood == null) {
+            Group group = new Group();
+            food.getChildren().add(group);
+            chunkFood = new CirclePool(group);
+            foodByChunk[chunk] = chunkFood;
+        }
+        chunkFood.begin();
+        for (int f = from; f < frame.foodEnd[i]; f++) {
+            int cell = frame.foodCells[f];
+            chunkFood.place(centre(worldTiles.x(cell), tileSize, offset), centre(worldTiles.y(cell), tileSize, offset),
+                    radius, Color.DARKRED);
+        }
+        chunkFood.end();
+    }
+
+    private void highlightGoalFood(RenderFrame frame, TileGrid worldTiles, int tileSize, int offset) {
+
+        int radius = tileSize / 6;
+        if (canvasMode) {
+            GraphicsContext gc = canvas(highlightedFood);
+            gc.clearRect(0, 0, gc.getCanvas().getWidth(), gc.getCanvas().getHeight());
+            gc.setFill(Color.GOLD);
+            for (int i = 0; i < frame.goalCount; i++)
+                gc.fillOval(centre(worldTiles.x(frame.goals[i]), tileSize, offset) - radius,
+                        centre(worldTiles.y(frame.goals[i]), tileSize, offset) - radius, 2 * radius, 2 * radius);
+            return;
+        }
+
+        highlightPool.begin();
+        for (int i = 0; i < frame.goalCount; i++)
+            highlightPool.place(centre(worldTiles.x(frame.goals[i]), tileSize, offset),
+                    centre(worldTiles.y(frame.goals[i]), tileSize, offset), radius, Color.GOLD);
+        highlightPool.end();
     }
 
-    public void drawAgents(ArrayList<Agent> currentAgents, int tileSize, int offset) {
+    private void drawAgents(RenderFrame frame, int tileSize, int offset) {
+
+        int radius = tileSize / 4;
+        if (canvasMode) {
+            GraphicsContext gc = canvas(agents);
+            gc.clearRect(0, 0, gc.getCanvas().getWidth(), gc.getCanvas().getHeight());
+            for (int i = 0; i < frame.agentCount; i++) {
+                gc.setFill(agentColour(frame.strategies[i]));
+                gc.fillOval(centre(frame.agentX[i], tileSize, offset) - radius,
+                        centre(frame.agentY[i], tileSize, offset) - radius, 2 * radius, 2 * radius);
+            }
+            return;
+        }
 
-        agents.getChildren().clear();
+        agentPool.begin();
+        for (int i = 0; i < frame.agentCount; i++)
+            agentPool.place(centre(frame.agentX[i], tileSize, offset), centre(frame.agentY[i], tileSize, offset),
+                    radius, agentColour(frame.strategies[i]));
+        agentPool.end();
+    }
 
-        for (Agent agent : currentAgents) {
-            if (agent instanceof DoveAgent)
-                agents.getChildren().add(new Circle(agent.position.x * tileSize + offset + tileSize / 2,
-                        agent.position.y * tileSize + offset +
-                                tileSize / 2, tileSize / 4, Color.LIGHTBLUE));
-            else if (agent instanceof HawkAgent)
-                agents.getChildren().add(new Circle(agent.position.x * tileSize + offset + tileSize / 2,
-                        agent.position.y * tileSize + offset +
-                                tileSize / 2, tileSize / 4, Color.PALEVIOLETRED));
+    // Colour to draw agents playing a strategy, as registered with it
+    private Color agentColour(int strategy) {
+        if (strategy >= agentColours.length)
+            agentColours = Arrays.copyOf(agentColours, StrategyRegistry.count());
+        if (agentColours[strategy] == null) {
+            int rgb = StrategyRegistry.colour(strategy);
+            agentColours[strategy] = Color.rgb(rgb >> 16 & 0xFF, rgb >> 8 & 0xFF, rgb & 0xFF);
         }
+        return agentColours[strategy];
+    }
+
+    // Screen coordinate of the middle of a tile
+    private static int centre(int tile, int tileSize, int offset) {
+        return tile * tileSize + offset + tileSize / 2;
+    }
+
+    // The canvas a layer is drawn on in canvas mode, replaced if the board has changed size since it was made
+    private GraphicsContext canvas(Group layer) {
+        if (layer.getChildren().isEmpty() || ((Canvas) layer.getChildren().get(0)).getWidth() != boardWidth ||
+                ((Canvas) layer.getChildren().get(0)).getHeight() != boardHeight)
+            layer.getChildren().setAll(new Canvas(boardWidth, boardHeight));
+        return ((Canvas) layer.getChildren().get(0)).getGraphicsContext2D();
     }
 
     private void makecontrols(GridWorld gridWorld, Controller controller) {
@@ -118,8 +232,16 @@ public class View extends Application {
             }
         });
 
+        Button autoplayButton = new Button(gridWorld.autoplayMode ? "Pause" : "Play");
+        autoplayButton.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                autoplayButton.setText(controller.toggleAutoplay() ? "Pause" : "Play");
+            }
+        });
+
         HBox hb = new HBox();
-        hb.getChildren().addAll(nextTurnButton, newGameButton);
+        hb.getChildren().addAll(nextTurnButton, newGameButton, autoplayButton);
         hb.setSpacing(20);
         hb.setLayoutX(gridWorld.WINDOW_WIDTH - gridWorld.PANEL_WIDTH - gridWorld.OFFSET);
         hb.setLayoutY(gridWorld.OFFSET);
@@ -132,27 +254,32 @@ public class View extends Application {
 
         // Create a GridWorld (Model), generate tiles
         GridWorld gridWorld = new GridWorld();
+        canvasMode = gridWorld.canvasRendering;
         Controller controller = new Controller();
         controller.addModel(gridWorld);
         controller.addView(this);
         makecontrols(gridWorld, controller);
-        controller.newGame();
-
-        Scene scene = new Scene(root, gridWorld.WINDOW_WIDTH, gridWorld.WINDOW_HEIGHT);
-        primaryStage.setTitle("HawkDove: A Game Theory Battleground");
 
         root.getChildren().add(tiles);
         root.getChildren().add(food);
         root.getChildren().add(highlightedFood);
         root.getChildren().add(agents);
+        controller.newGame();
+
+        Scene scene = new Scene(root, gridWorld.WINDOW_WIDTH, gridWorld.WINDOW_HEIGHT);
+        primaryStage.setTitle("HawkDove: A Game Theory Battleground");
 
         primaryStage.setScene(scene);
 
-        /*// Timeline that makes all the action happen!
-        Timeline timeline = new Timeline(new KeyFrame(Duration.millis(100), handler -> {
-                }));
-        timeline.setCycleCount(Animation.INDEFINITE);
-        timeline.play();*/
+        // Draw whatever turn autoplay has got to, once per pulse; turns themselves are played on their own thread
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                controller.drawLatestFrame();
+            }
+        }.start();
+        if (gridWorld.autoplayMode)
+            controller.toggleAutoplay();
 
         primaryStage.show();
     }
@@ -1,25 +1,34 @@
 package GameLogic;
 
 /**
- * Stores all parameter values for a game, including default values for everything
+ * Stores all parameter values for a game, including default values for everything.
+ *
+ * Each world has its own settings, and the game logic variables are fixed once the settings are created, so any
+ * number of worlds with different settings can run side by side
  */
 public class WorldSettings {
 
-    // Default Game logic variables
-    public static int STARTING_FOOD = 3;
-    public static int STEPS_TO_LOSE_FOOD = 10;
-    int FOOD_VALUE = 3;               // how much value each food item is worth
-    double FOOD_GROWTH_RATE = 1;      // rough frequency that food grows
-    int SPAWN_THRESHOLD = 10;         // how much food an agent must accrue before spawning a child
-    int SPAWN_COST = 2;               // the food cost to spawn a child
-    int CHILD_START_FOOD = 3;         // the amount of food a parent gives to its child to start with
-    int GAME_LOSS_COST = 5;           // food lost when losing to another Hawk
-    public KinLoyalty kinLoyalty = KinLoyalty.ETERNAL;
+    // Game logic variables
+    public final int STARTING_FOOD;         // food each agent starts with
+    public final int STEPS_TO_LOSE_FOOD;    // agents lose 1 food every this many steps
+    final int FOOD_VALUE;             // how much value each food item is worth
+    final double FOOD_GROWTH_RATE;    // average number of food items grown per turn
+    public boolean fertilityWeightedGrowth = false;   // food grows more often on more fertile tiles
+    final int SPAWN_THRESHOLD;        // how much food an agent must accrue before spawning a child
+    final int SPAWN_COST;             // the food cost to spawn a child
+    final int CHILD_START_FOOD;       // the amount of food a parent gives to its child to start with
+    final int GAME_LOSS_COST;         // food lost when losing to another Hawk
+    public final KinLoyalty kinLoyalty;
+    int KIN_COOL_OFF_TURNS = 10;      // how long parent and child stay loyal under KinLoyalty.COOL_OFF
+    int KIN_GENERATIONS = 1;          // how far apart kin can be: 1 for parent and child, 2 adds grandparents, etc
+    int ENCOUNTER_MEMORY = 8;         // opponents each agent remembers, forgetting the least recently met first
+    public boolean randomiseHawkGames = false;     // Hawk-Hawk games give v to one agent and cost the other c
 
     // Game play mode variables
     int WORLD_X_TILES = 15;           // number of tiles vertically
     int WORLD_Y_TILES = 15;           // number of tiles horizontally
     public boolean autoplayMode = false;
+    public double autoplayRate = 10;         // turns per second in autoplay, or 0 to play as fast as possible
     public boolean playMode = false;
 
     // GUI variables
@@ -27,15 +36,29 @@ public class WorldSettings {
     int OFFSET = 10;                         // makes tiles and agents position properly somehow
     int PANEL_WIDTH = 300;                   // The width of the control panel buttons will go on
     int PANEL_MIN_HEIGHT = 400;
+    public boolean canvasRendering = false;     // draw the board on canvases rather than a node per thing, for big worlds
 
     double WINDOW_WIDTH = (WORLD_X_TILES * TILE_SIZE) + 3 * OFFSET + PANEL_WIDTH;
     double WINDOW_HEIGHT = Math.max((WORLD_Y_TILES * TILE_SIZE) + 2 * OFFSET, PANEL_MIN_HEIGHT);
 
     // Game performance variables
     int DFSlimit = 5;
+    public FoodSearchMode foodSearchMode = FoodSearchMode.LIMITED_SIGHT;
+    public boolean parallelAgentSteps = false;    // let agents decide their moves in parallel across cores
+    public boolean parallelGeneration = true;     // generate whole worlds a band of rows per core
+    public boolean connectedWorlds = false;       // wall off everything but the largest region; not with lazyChunks
+    public boolean bitboardMode = false;          // keep tiles as bitplanes too, for neighbourhood tests on whole words
+    public boolean lazyChunks = false;    // only generate each chunk of the world once something comes near it
+    long seed = System.nanoTime();    // seed for all randomness; reuse a seed to replay a run exactly
 
     public WorldSettings(int startingFood, int stepsToLoseFood, int foodValue, double foodGrowthRate, int spawnThreshold,
                          int spawnCost, int childStartFood, int gameLossCost) {
+        this(startingFood, stepsToLoseFood, foodValue, foodGrowthRate, spawnThreshold, spawnCost, childStartFood,
+                gameLossCost, KinLoyalty.ETERNAL);
+    }
+
+    public WorldSettings(int startingFood, int stepsToLoseFood, int foodValue, double foodGrowthRate, int spawnThreshold,
+                         int spawnCost, int childStartFood, int gameLossCost, KinLoyalty kinLoyalty) {
         this.STARTING_FOOD = startingFood;
         this.STEPS_TO_LOSE_FOOD = stepsToLoseFood;
         this.FOOD_VALUE = foodValue;
@@ -44,10 +67,51 @@ public class WorldSettings {
         this.SPAWN_COST = spawnCost;
         this.CHILD_START_FOOD = childStartFood;
         this.GAME_LOSS_COST = gameLossCost;
+        this.kinLoyalty = kinLoyalty;
     }
 
     // Alternative constructor using all default parameters
-    public WorldSettings() { }
+    public WorldSettings() {
+        this(3, 10, 3, 1, 10, 2, 3, 5);
+    }
 
+    // Copy every one of another world's settings
+    public WorldSettings(WorldSettings other) {
+        this(other.STARTING_FOOD, other.STEPS_TO_LOSE_FOOD, other.FOOD_VALUE, other.FOOD_GROWTH_RATE,
+                other.SPAWN_THRESHOLD, other.SPAWN_COST, other.CHILD_START_FOOD, other.GAME_LOSS_COST, other.kinLoyalty);
+        this.fertilityWeightedGrowth = other.fertilityWeightedGrowth;
+        this.KIN_COOL_OFF_TURNS = other.KIN_COOL_OFF_TURNS;
+        this.KIN_GENERATIONS = other.KIN_GENERATIONS;
+        this.ENCOUNTER_MEMORY = other.ENCOUNTER_MEMORY;
+        this.randomiseHawkGames = other.randomiseHawkGames;
+        this.WORLD_X_TILES = other.WORLD_X_TILES;
+        this.WORLD_Y_TILES = other.WORLD_Y_TILES;
+        this.autoplayMode = other.autoplayMode;
+        this.autoplayRate = other.autoplayRate;
+        this.playMode = other.playMode;
+        this.TILE_SIZE = other.TILE_SIZE;
+        this.OFFSET = other.OFFSET;
+        this.PANEL_WIDTH = other.PANEL_WIDTH;
+        this.PANEL_MIN_HEIGHT = other.PANEL_MIN_HEIGHT;
+        this.canvasRendering = other.canvasRendering;
+        this.WINDOW_WIDTH = other.WINDOW_WIDTH;
+        this.WINDOW_HEIGHT = other.WINDOW_HEIGHT;
+        this.DFSlimit = other.DFSlimit;
+        this.foodSearchMode = other.foodSearchMode;
+        this.parallelAgentSteps = other.parallelAgentSteps;
+        this.parallelGeneration = other.parallelGeneration;
+        this.connectedWorlds = other.connectedWorlds;
+        this.bitboardMode = other.bitboardMode;
+        this.lazyChunks = other.lazyChunks;
+        this.seed = other.seed;
+    }
 
+    @Override
+    public String toString() {
+        return "STARTING_FOOD=" + STARTING_FOOD + ", STEPS_TO_LOSE_FOOD=" + STEPS_TO_LOSE_FOOD +
+                ", FOOD_VALUE=" + FOOD_VALUE + ", FOOD_GROWTH_RATE=" + FOOD_GROWTH_RATE +
+                ", SPAWN_THRESHOLD=" + SPAWN_THRESHOLD + ", SPAWN_COST=" + SPAWN_COST +
+                ", CHILD_START_FOOD=" + CHILD_START_FOOD + ", GAME_LOSS_COST=" + GAME_LOSS_COST +
+                ", kinLoyalty=" + kinLoyalty;
+    }
 }
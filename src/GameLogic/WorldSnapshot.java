@@ -0,0 +1,191 @@
+package GameLogic;
+
+import Agents.Agent;
+import Agents.StrategyRegistry;
+import Tiles.TilePattern;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Saves a whole GridWorld to a compact binary file, and restores it so the run carries on exactly as if it had never
+ * stopped: settings, tiles, food, every agent and the state of every source of randomness.
+ *
+ * Snapshots are written and read through memory-mapped windows (see SnapshotOutput), with tile layers copied in bulk,
+ * so even very large worlds can be checkpointed every few turns. Snapshots must be taken between turns
+ */
+public class WorldSnapshot {
+
+    public static final int MAGIC = 0x48445753;    // "HDWS"
+    public static final int VERSION = 10;
+
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int SETTINGS_SIZE = 15 * Integer.BYTES + Double.BYTES + 7 * Byte.BYTES + Long.BYTES;
+    private static final int STATE_SIZE = Long.BYTES + 2 * Integer.BYTES + Double.BYTES + 3 * Long.BYTES +
+            4 * 2 * Long.BYTES;
+
+    private WorldSnapshot() { }
+
+    // Save a world to a file, replacing any existing file
+    public static void save(GridWorld world, Path file) throws IOException {
+        long size = HEADER_SIZE + SETTINGS_SIZE + STATE_SIZE + world.tiles.snapshotSize() + Integer.BYTES +
+                world.encounters.snapshotSize() + world.lineage.snapshotSize();
+        int strategies = StrategyRegistry.count();
+        size += Integer.BYTES;
+        for (int strategy = 0; strategy < strategies; strategy++)
+            size += 2 * Integer.BYTES + StrategyRegistry.name(strategy).getBytes(StandardCharsets.UTF_8).length +
+                    StrategyRegistry.SITUATIONS * Double.BYTES;
+        for (Agent agent : world.agents)
+            size += Integer.BYTES + agent.snapshotSize();
+
+        try (SnapshotOutput out = new SnapshotOutput(file, size)) {
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+
+            out.putInt(world.STARTING_FOOD);
+            out.putInt(world.STEPS_TO_LOSE_FOOD);
+            out.putInt(world.FOOD_VALUE);
+            out.putDouble(world.FOOD_GROWTH_RATE);
+            out.putInt(world.SPAWN_THRESHOLD);
+            out.putInt(world.SPAWN_COST);
+            out.putInt(world.CHILD_START_FOOD);
+            out.putInt(world.GAME_LOSS_COST);
+            out.putInt(world.kinLoyalty.ordinal());
+            out.putInt(world.KIN_COOL_OFF_TURNS);
+            out.putInt(world.KIN_GENERATIONS);
+            out.putInt(world.ENCOUNTER_MEMORY);
+            out.putByte((byte) (world.fertilityWeightedGrowth ? 1 : 0));
+            out.putByte((byte) (world.randomiseHawkGames ? 1 : 0));
+            out.putInt(world.WORLD_X_TILES);
+            out.putInt(world.WORLD_Y_TILES);
+            out.putInt(world.DFSlimit);
+            out.putInt(world.foodSearchMode.ordinal());
+            out.putByte((byte) (world.parallelAgentSteps ? 1 : 0));
+            out.putByte((byte) (world.parallelGeneration ? 1 : 0));
+            out.putByte((byte) (world.connectedWorlds ? 1 : 0));
+            out.putByte((byte) (world.bitboardMode ? 1 : 0));
+            out.putByte((byte) (world.lazyChunks ? 1 : 0));
+            out.putLong(world.seed);
+
+            out.putLong(world.turn);
+            out.putInt(world.nextAgentId);
+            out.putInt(world.pattern.ordinal());
+            out.putDouble(world.foodDensity);
+            out.putRandom(world.random);
+            out.putLong(world.worldSeed);
+            out.putLong(world.agentSeed);
+            out.putLong(world.foodSeed);
+            out.putRandom(world.foodRandom);
+            out.putRandom(world.placementRandom);
+            out.putRandom(world.contestRandom);
+
+            world.tiles.writeTo(out);
+
+            // every strategy in full, as the loading process may have registered them in another order, or not at all
+            out.putInt(strategies);
+            for (int strategy = 0; strategy < strategies; strategy++) {
+                byte[] name = StrategyRegistry.name(strategy).getBytes(StandardCharsets.UTF_8);
+                out.putInt(name.length);
+                out.put(name, 0, name.length);
+                out.putInt(StrategyRegistry.colour(strategy));
+                for (int situation = 0; situation < StrategyRegistry.SITUATIONS; situation++)
+                    out.putDouble(StrategyRegistry.hawkChance(strategy, situation));
+            }
+
+            out.putInt(world.agents.size());
+            for (Agent agent : world.agents) {
+                out.putInt(agent.getStrategy());
+                agent.writeTo(out);
+            }
+            world.encounters.writeTo(out);
+            world.lineage.writeTo(out);
+        }
+    }
+
+    // Restore a world saved by save()
+    public static GridWorld load(Path file) throws IOException {
+        try (SnapshotInput in = new SnapshotInput(file)) {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION)
+                throw new IOException("Not a world snapshot, or from an incompatible version");
+
+            int startingFood = in.getInt();
+            int stepsToLoseFood = in.getInt();
+            int foodValue = in.getInt();
+            double foodGrowthRate = in.getDouble();
+            int spawnThreshold = in.getInt();
+            int spawnCost = in.getInt();
+            int childStartFood = in.getInt();
+            int gameLossCost = in.getInt();
+            KinLoyalty kinLoyalty = KinLoyalty.values()[in.getInt()];
+            WorldSettings settings = new WorldSettings(startingFood, stepsToLoseFood, foodValue, foodGrowthRate,
+                    spawnThreshold, spawnCost, childStartFood, gameLossCost, kinLoyalty);
+            settings.KIN_COOL_OFF_TURNS = in.getInt();
+            settings.KIN_GENERATIONS = in.getInt();
+            settings.ENCOUNTER_MEMORY = in.getInt();
+            settings.fertilityWeightedGrowth = in.getByte() != 0;
+            settings.randomiseHawkGames = in.getByte() != 0;
+            settings.WORLD_X_TILES = in.getInt();
+            settings.WORLD_Y_TILES = in.getInt();
+            settings.DFSlimit = in.getInt();
+            settings.foodSearchMode = FoodSearchMode.values()[in.getInt()];
+            settings.parallelAgentSteps = in.getByte() != 0;
+            settings.parallelGeneration = in.getByte() != 0;
+            settings.connectedWorlds = in.getByte() != 0;
+            settings.bitboardMode = in.getByte() != 0;
+            settings.lazyChunks = in.getByte() != 0;
+            settings.seed = in.getLong();
+
+            GridWorld world = new GridWorld(settings);
+            world.turn = in.getLong();
+            world.nextAgentId = in.getInt();
+            world.pattern = TilePattern.values()[in.getInt()];
+            world.foodDensity = in.getDouble();
+            world.random = in.getRandom();
+            world.worldSeed = in.getLong();
+            world.agentSeed = in.getLong();
+            world.foodSeed = in.getLong();
+            world.foodRandom = in.getRandom();
+            world.placementRandom = in.getRandom();
+            world.contestRandom = in.getRandom();
+
+            world.tiles.readFrom(in);
+            world.foodGrowth = new FoodGrowthScheduler(world.tiles);
+
+            // saved strategy number -> the same strategy's number here, registering any that are missing. A strategy
+            // already registered under the same name must play exactly the same, or the run wouldn't carry on the same
+            int[] strategies = new int[in.getInt()];
+            for (int i = 0; i < strategies.length; i++) {
+                byte[] nameBytes = new byte[in.getInt()];
+                in.get(nameBytes, 0, nameBytes.length);
+                String name = new String(nameBytes, StandardCharsets.UTF_8);
+                int colour = in.getInt();
+                double[] hawkChance = new double[StrategyRegistry.SITUATIONS];
+                for (int situation = 0; situation < hawkChance.length; situation++)
+                    hawkChance[situation] = in.getDouble();
+                strategies[i] = StrategyRegistry.register(name, colour, situation -> hawkChance[situation]);
+                for (int situation = 0; situation < hawkChance.length; situation++)
+                    if (StrategyRegistry.hawkChance(strategies[i], situation) != hawkChance[situation])
+                        throw new IOException("Strategy " + name + " is already registered, but plays differently " +
+                                "from the one in the snapshot");
+            }
+
+            int agentCount = in.getInt();
+            for (int i = 0; i < agentCount; i++) {
+                Agent agent = StrategyRegistry.create(strategies[in.getInt()], new Position(0, 0), "");
+                agent.readFrom(in);
+                int cell = world.tiles.index(agent.position.x, agent.position.y);
+                world.tiles.addAgent(cell);
+                world.agents.add(agent);
+                world.positions.insert(agent.id, cell);
+                world.createAround(cell);
+            }
+            // neighbour bits aren't saved, so work them out now, as generating does, rather than in the decide phase
+            if (!world.lazyChunks)
+                world.tiles.createAll();
+            world.encounters.readFrom(in);
+            world.lineage.readFrom(in);
+            return world;
+        }
+    }
+}
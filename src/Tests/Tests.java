@@ -1,11 +1,49 @@
 package Tests;
 
+import Agents.Agent;
 import Agents.DoveAgent;
+import Agents.HawkAgent;
+import Agents.Strategy;
+import Agents.StrategyRegistry;
+import GameLogic.AutoplayEngine;
+import GameLogic.EncounterMemory;
+import GameLogic.FoodDistanceField;
+import GameLogic.FoodGrowthScheduler;
 import GameLogic.GridWorld;
+import GameLogic.HeadlessRunner;
+import GameLogic.KinLoyalty;
+import GameLogic.Lineage;
+import GameLogic.MetricsRecorder;
 import GameLogic.Position;
+import GameLogic.RandomStream;
+import GameLogic.RenderFrame;
+import GameLogic.SpatialIndex;
+import GameLogic.SweepRunner;
+import GameLogic.WorldSettings;
+import GameLogic.WorldSnapshot;
+import Tiles.Bitboard;
+import Tiles.ChunkSet;
+import Tiles.Components;
+import Tiles.TileGrid;
 import Tiles.TilePattern;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -19,7 +57,7 @@ public class Tests {
     @Test
     public void makeGridWorld() {
         GridWorld gridWorld = new GridWorld();
-        assertFalse("Actually, tile size = " + gridWorld.tiles.length, gridWorld.tiles.length == 0);
+        assertFalse("Actually, tile size = " + gridWorld.tiles.size(), gridWorld.tiles.size() == 0);
 
         for (TilePattern pattern : TilePattern.values()) {
             gridWorld.generateWorld(pattern);
@@ -31,14 +69,14 @@ public class Tests {
 
     // Helper function to draw an ASCII picture of the world
     public void drawWorld(GridWorld gridWorld) {
-        for (int i = 0; i < gridWorld.tiles.length; i++) {
-            for (int j = 0; j < gridWorld.tiles[0].length; j++) {
-                if (!gridWorld.tiles[i][j].walkable())
+        for (int i = 0; i < gridWorld.tiles.width; i++) {
+            for (int j = 0; j < gridWorld.tiles.height; j++) {
+                if (!gridWorld.tiles.walkable(i, j))
                     System.out.print("X ");
                 else {
-                    if (gridWorld.tiles[i][j].agents.size() > 0)
+                    if (gridWorld.tiles.agentCount(i, j) > 0)
                         System.out.print("o ");
-                    else if (gridWorld.tiles[i][j].hasFood())
+                    else if (gridWorld.tiles.hasFood(i, j))
                         System.out.print("* ");
                     else
                         System.out.print("_ ");
@@ -85,4 +123,920 @@ public class Tests {
         drawWorld(gridWorld);
     }
 
+    @Test
+    public void headlessRun() {
+        HeadlessRunner runner = new HeadlessRunner(new GridWorld());
+        runner.newGame(TilePattern.RANDOM_SPARSE, 5, 5, 0.05);
+        assertTrue(runner.countAgents(DoveAgent.class) == 5);
+        assertTrue(runner.countAgents(HawkAgent.class) == 5);
+
+        long turnsRun = runner.run(1000);
+        assertTrue(turnsRun > 0 && turnsRun <= 1000);
+    }
+
+    @Test
+    public void searchFindsDistantFood() {
+        GridWorld gridWorld = new GridWorld();
+        gridWorld.generateWorld(TilePattern.OPEN_FIELD);
+        DoveAgent agent = new DoveAgent(new Position(1, 1), "Adam");
+        gridWorld.addAgent(agent);
+        int food = gridWorld.tiles.index(13, 13);
+        gridWorld.tiles.growFood(food);
+
+        // food is 24 steps away, so out of sight for a shallow search but found by a deep one
+        agent.searchForFood(gridWorld.tiles, 5);
+        assertTrue(agent.goal == Agent.NO_GOAL);
+        agent.searchForFood(gridWorld.tiles, 30);
+        assertTrue(agent.goal == food);
+
+        // once found, agent follows a shortest route to the goal
+        int steps = 0;
+        while (agent.goal != Agent.NO_GOAL && steps < 30) {
+            agent.move(gridWorld.tiles, gridWorld.STEPS_TO_LOSE_FOOD);
+            steps++;
+            if (agent.position.equals(new Position(13, 13)))
+                break;
+            agent.searchForFood(gridWorld.tiles, 30);
+        }
+        assertTrue("Took " + steps + " steps", steps == 24);
+    }
+
+    @Test
+    public void foodDistanceFieldStaysExact() {
+        GridWorld gridWorld = new GridWorld();
+        gridWorld.generateWorld(TilePattern.RANDOM_DENSE);
+        FoodDistanceField field = new FoodDistanceField(gridWorld.tiles);
+        gridWorld.tiles.setFoodListener(field);
+        Random r = new Random(42);
+
+        // after every incremental update the field should match one rebuilt from scratch
+        for (int i = 0; i < 500; i++) {
+            int cell = r.nextInt(gridWorld.tiles.size());
+            if (r.nextBoolean())
+                gridWorld.tiles.growFood(cell);
+            else
+                gridWorld.tiles.loseFood(cell);
+
+            FoodDistanceField fresh = new FoodDistanceField(gridWorld.tiles);
+            for (int c = 0; c < gridWorld.tiles.size(); c++)
+                assertTrue("Mismatch at tile " + c + " after update " + i, field.distance(c) == fresh.distance(c));
+        }
+    }
+
+    @Test
+    public void contestedFoodPlaysGame() {
+        GridWorld gridWorld = new GridWorld();
+        gridWorld.generateWorld(TilePattern.OPEN_FIELD);
+        HawkAgent hawk = new HawkAgent(new Position(4, 5), "Eve");
+        DoveAgent dove = new DoveAgent(new Position(6, 5), "Adam");
+        gridWorld.addAgent(hawk);
+        gridWorld.addAgent(dove);
+        gridWorld.tiles.growFood(gridWorld.tiles.index(5, 5));
+
+        // both step onto the food; the Hawk takes all of it from the Dove
+        int startingFood = hawk.food;
+        gridWorld.nextTurn();
+        assertTrue(hawk.position.equals(new Position(5, 5)) && dove.position.equals(new Position(5, 5)));
+        assertTrue("Hawk has " + hawk.food, hawk.food == startingFood + 3);
+        assertTrue("Dove has " + dove.food, dove.food == startingFood);
+        assertFalse(gridWorld.tiles.hasFood(5, 5));
+    }
+
+    @Test
+    public void seededRunsAreReproducible() {
+        // the same seed gives the same run, whether agents decide their moves sequentially or in parallel
+        String sequential = runSeeded(1234, false);
+        String parallel = runSeeded(1234, true);
+        assertTrue(sequential.equals(parallel));
+        assertTrue(sequential.equals(runSeeded(1234, false)));
+        assertFalse(sequential.equals(runSeeded(4321, false)));
+    }
+
+    // Helper function to run a seeded world for a while and describe where it ended up
+    private String runSeeded(long seed, boolean parallel) {
+        GridWorld gridWorld = new GridWorld();
+        gridWorld.setSeed(seed);
+        gridWorld.parallelAgentSteps = parallel;
+        HeadlessRunner runner = new HeadlessRunner(gridWorld);
+        runner.newGame(TilePattern.RANDOM_SPARSE, 10, 10, 0.2);
+        runner.run(300);
+
+        StringBuilder description = new StringBuilder();
+        for (Agent agent : gridWorld.agents)
+            description.append(agent.id).append(agent.position.getCoords()).append(agent.food).append(' ');
+        for (int cell = 0; cell < gridWorld.tiles.size(); cell++)
+            description.append(gridWorld.tiles.hasFood(cell) ? '*' : '_');
+        return description.toString();
+    }
+
+    @Test
+    public void massDieOff() {
+        GridWorld gridWorld = new GridWorld();
+        gridWorld.generateWorld(TilePattern.OPEN_FIELD);
+        for (int i = 0; i < 100; i++)
+            gridWorld.addAgent(new DoveAgent(gridWorld.getWalkableTile(), "Adam" + i));
+
+        // starve every agent with an odd id
+        for (Agent agent : gridWorld.agents)
+            if (agent.id % 2 == 1)
+                agent.food = 0;
+        gridWorld.nextTurn();
+
+        assertTrue(gridWorld.agents.size() == 50);
+        for (int slot = 0; slot < gridWorld.agents.size(); slot++) {
+            Agent agent = gridWorld.agents.get(slot);
+            assertTrue(agent.id % 2 == 0);
+            assertTrue(gridWorld.agents.slotOf(agent.id) == slot);
+        }
+        int onTiles = 0;
+        for (int cell = 0; cell < gridWorld.tiles.size(); cell++)
+            onTiles += gridWorld.tiles.agentCount(cell);
+        assertTrue(onTiles == 50);
+    }
+
+    @Test
+    public void foodGrowsOnFertileWalkableTiles() {
+        GridWorld gridWorld = new GridWorld();
+        gridWorld.setSeed(7);
+        gridWorld.generateWorld(TilePattern.RANDOM_DENSE);
+        FoodGrowthScheduler scheduler = new FoodGrowthScheduler(gridWorld.tiles);
+        RandomStream r = new RandomStream(7);
+
+        // fertility is uniform on [0, 1], so weighting picks by it should lift their mean fertility from 1/2 to 2/3
+        double uniformFertility = 0, weightedFertility = 0;
+        int picks = 20000;
+        for (int i = 0; i < picks; i++) {
+            int uniform = scheduler.pickUniform(r);
+            int weighted = scheduler.pickByFertility(r);
+            assertTrue(gridWorld.tiles.walkable(uniform) && gridWorld.tiles.walkable(weighted));
+            uniformFertility += gridWorld.tiles.fertility(uniform);
+            weightedFertility += gridWorld.tiles.fertility(weighted);
+        }
+        assertEquals(0.5, uniformFertility / picks, 0.05);
+        assertEquals(2.0 / 3, weightedFertility / picks, 0.05);
+
+        // growing several items a turn fills the world up quickly, and only ever on walkable tiles
+        scheduler.grow(20, true, r);
+        int food = 0;
+        for (int cell = 0; cell < gridWorld.tiles.size(); cell++)
+            if (gridWorld.tiles.hasFood(cell))
+                food++;
+        assertTrue(food > 0 && food <= 20);
+    }
+
+    @Test
+    public void sweepIsReproducibleAcrossThreads() throws InterruptedException {
+        List<WorldSettings> sweep = SweepRunner.grid(new int[]{2, 5}, new int[]{3, 8}, new int[]{10},
+                new double[]{1}, new KinLoyalty[]{KinLoyalty.NONE, KinLoyalty.ETERNAL});
+        List<SweepRunner.Result> single = new SweepRunner(1).run(sweep, 200, 99);
+        List<SweepRunner.Result> pooled = new SweepRunner(4).run(sweep, 200, 99);
+
+        assertEquals(8, single.size());
+        for (int i = 0; i < sweep.size(); i++) {
+            assertTrue(pooled.get(i).settings == sweep.get(i));
+            assertEquals(single.get(i).turnsRun, pooled.get(i).turnsRun);
+            assertEquals(single.get(i).doves, pooled.get(i).doves);
+            assertEquals(single.get(i).hawks, pooled.get(i).hawks);
+        }
+
+        // worlds with different settings can live side by side
+        GridWorld generous = new GridWorld(new WorldSettings(20, 10, 3, 1, 10, 2, 3, 5));
+        GridWorld stingy = new GridWorld(new WorldSettings(1, 10, 3, 1, 10, 2, 3, 5));
+        generous.generateWorld(TilePattern.OPEN_FIELD);
+        stingy.generateWorld(TilePattern.OPEN_FIELD);
+        generous.addAgent(new DoveAgent(generous.getWalkableTile(), "Adam"));
+        stingy.addAgent(new DoveAgent(stingy.getWalkableTile(), "Adam"));
+        assertEquals(20, generous.agents.get(0).food);
+        assertEquals(1, stingy.agents.get(0).food);
+
+        // a world's copy of its settings keeps how it's played too
+        WorldSettings autoplay = new WorldSettings();
+        autoplay.autoplayMode = true;
+        autoplay.playMode = true;
+        autoplay.autoplayRate = 0;
+        GridWorld copy = new GridWorld(autoplay);
+        assertTrue(copy.autoplayMode);
+        assertTrue(copy.playMode);
+        assertEquals(0, copy.autoplayRate, 0);
+    }
+
+    @Test
+    public void metricsRoundTrip() throws IOException {
+        GridWorld gridWorld = new GridWorld();
+        gridWorld.setSeed(5);
+        HeadlessRunner runner = new HeadlessRunner(gridWorld);
+        runner.newGame(TilePattern.OPEN_FIELD, 10, 10, 0.2);
+        int population = gridWorld.agents.size();
+
+        Path file = Files.createTempFile("metrics", ".bin");
+        try {
+            runner.recordMetrics(file);
+            long turnsRun = runner.run(1000);
+            runner.finish();
+            MetricsRecorder.Series series = MetricsRecorder.read(file);
+
+            // every turn is there, in order, and the population only changes through births and deaths
+            assertEquals(turnsRun, series.length);
+            for (int i = 0; i < series.length; i++) {
+                assertEquals(i + 1, series.turn[i]);
+                population += series.births[i] - series.deaths[i];
+                assertEquals(population, series.doves[i] + series.hawks[i]);
+                assertTrue(series.foodOnBoard[i] >= 0);
+            }
+            assertEquals(gridWorld.agents.size(), population);
+            assertEquals(runner.countAgents(HawkAgent.class), series.hawks[series.length - 1]);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void snapshotResumesIdentically() throws IOException {
+        GridWorld gridWorld = new GridWorld(new WorldSettings(3, 10, 3, 1, 10, 2, 3, 5, KinLoyalty.COOL_OFF));
+        gridWorld.setSeed(11);
+        gridWorld.randomiseHawkGames = true;
+        HeadlessRunner runner = new HeadlessRunner(gridWorld);
+        runner.newGame(TilePattern.RANDOM_SPARSE, 10, 10, 0.2);
+        runner.run(100);
+
+        Path file = Files.createTempFile("world", ".snapshot");
+        try {
+            WorldSnapshot.save(gridWorld, file);
+            GridWorld restored = WorldSnapshot.load(file);
+            assertEquals(gridWorld.turn, restored.turn);
+            assertEquals(gridWorld.tiles.foodCount(), restored.tiles.foodCount());
+
+            // both copies carry on in lockstep
+            runner.run(200);
+            new HeadlessRunner(restored).run(200);
+            assertEquals(describe(gridWorld), describe(restored));
+
+            // so do lazy worlds whose agents decide in parallel, which must never generate chunks while deciding
+            GridWorld lazy = new GridWorld(300, 300);
+            lazy.setSeed(12);
+            lazy.lazyChunks = true;
+            lazy.parallelAgentSteps = true;
+            HeadlessRunner lazyRunner = new HeadlessRunner(lazy);
+            lazyRunner.newGame(TilePattern.RANDOM_SPARSE, 30, 30, 0.2);
+            lazyRunner.run(50);
+            WorldSnapshot.save(lazy, file);
+            GridWorld restoredLazy = WorldSnapshot.load(file);
+            assertTrue(restoredLazy.parallelAgentSteps);
+            assertEquals(lazy.tiles.createdCount(), restoredLazy.tiles.createdCount());
+            for (Agent agent : restoredLazy.agents)
+                assertTrue(restoredLazy.tiles.hasNeighbours(restoredLazy.tiles.chunkOf(
+                        restoredLazy.tiles.index(agent.position.x, agent.position.y))));
+            lazyRunner.run(150);
+            new HeadlessRunner(restoredLazy).run(150);
+            assertEquals(describe(lazy), describe(restoredLazy));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // Helper function to describe every agent and food item in a world
+    private String describe(GridWorld gridWorld) {
+        StringBuilder description = new StringBuilder();
+        for (Agent agent : gridWorld.agents)
+            description.append(agent).append(agent.id).append(' ');
+        for (int cell = 0; cell < gridWorld.tiles.size(); cell++)
+            description.append(gridWorld.tiles.hasFood(cell) ? '*' : '_').append(gridWorld.tiles.agentCount(cell));
+        return description.toString();
+    }
+
+    @Test
+    public void spatialIndexFindsNeighbours() {
+        GridWorld gridWorld = new GridWorld(40, 40);
+        gridWorld.setSeed(3);
+        HeadlessRunner runner = new HeadlessRunner(gridWorld);
+        runner.newGame(TilePattern.RANDOM_SPARSE, 40, 40, 0.3);
+        runner.run(50);
+
+        // every radius query agrees with checking every agent
+        int[] found = new int[gridWorld.agents.size()];
+        for (int radius = 0; radius <= 12; radius += 3) {
+            for (int y = 0; y < 40; y += 7) {
+                for (int x = 0; x < 40; x += 5) {
+                    int expected = 0;
+                    for (Agent agent : gridWorld.agents)
+                        if (Math.abs(agent.position.x - x) + Math.abs(agent.position.y - y) <= radius)
+                            expected++;
+                    int count = gridWorld.positions.within(x, y, radius, found);
+                    assertEquals(expected, count);
+                    for (int i = 0; i < count; i++) {
+                        Agent agent = gridWorld.agents.get(gridWorld.agents.slotOf(found[i]));
+                        assertTrue(Math.abs(agent.position.x - x) + Math.abs(agent.position.y - y) <= radius);
+                    }
+                }
+            }
+        }
+
+        // a single-tile index knows exactly who is on each tile
+        SpatialIndex exact = new SpatialIndex(gridWorld.tiles, 1);
+        for (Agent agent : gridWorld.agents)
+            exact.insert(agent.id, gridWorld.tiles.index(agent.position.x, agent.position.y));
+        for (int cell = 0; cell < gridWorld.tiles.size(); cell++)
+            assertEquals(gridWorld.tiles.agentCount(cell), exact.at(cell, found));
+
+        // ids far apart and entries reused after removal still find the right agent
+        exact.clear();
+        for (int id = 0; id < 1000; id++) {
+            exact.insert(id * 1000003, gridWorld.tiles.index(id % 40, id / 40 % 40));
+            if (id >= 10)
+                exact.remove((id - 10) * 1000003);
+        }
+        assertEquals(10, exact.size());
+        for (int id = 990; id < 1000; id++)
+            assertEquals(gridWorld.tiles.index(id % 40, id / 40 % 40), exact.cellOf(id * 1000003));
+        assertFalse(exact.contains(989 * 1000003));
+    }
+
+    @Test
+    public void lazyChunksMatchEagerWorld() {
+        GridWorld eager = new GridWorld(300, 200);
+        GridWorld lazy = new GridWorld(300, 200);
+        lazy.lazyChunks = true;
+        for (TilePattern pattern : TilePattern.values()) {
+            eager.setSeed(21);
+            lazy.setSeed(21);
+            eager.generateWorld(pattern);
+            lazy.generateWorld(pattern);
+            eager.seedFood(0.1);
+            lazy.seedFood(0.1);
+            assertEquals(0, lazy.tiles.createdCount());
+
+            // touching a tile generates its chunk, exactly as it was generated up front
+            lazy.addAgent(new DoveAgent(lazy.getWalkableTile(), "Adam"));
+            assertTrue(lazy.tiles.createdCount() > 0);
+            assertTrue(lazy.tiles.createdCount() < eager.tiles.createdCount());
+            for (int i = 0; i < lazy.tiles.createdCount(); i++) {
+                int origin = lazy.tiles.chunkOrigin(lazy.tiles.createdChunk(i));
+                for (int y = 0; y < TileGrid.CHUNK_SIZE; y++)
+                    for (int x = 0; x < TileGrid.CHUNK_SIZE; x++) {
+                        int cell = origin + y * lazy.tiles.stride + x;
+                        assertEquals(eager.tiles.walkable(cell), lazy.tiles.walkable(cell));
+                        assertEquals(eager.tiles.hasFood(cell), lazy.tiles.hasFood(cell));
+                        assertEquals(eager.tiles.fertility(cell), lazy.tiles.fertility(cell), 0);
+                    }
+            }
+        }
+
+        // a small population in a huge lazy world only generates the chunks around it
+        GridWorld huge = new GridWorld(20000, 20000);
+        huge.lazyChunks = true;
+        huge.setSeed(8);
+        HeadlessRunner runner = new HeadlessRunner(huge);
+        runner.newGame(TilePattern.RANDOM_SPARSE, 3, 3, 0.1);
+        runner.run(200);
+        assertTrue(huge.tiles.createdCount() < huge.tiles.chunkCount() / 100);
+        for (Agent agent : huge.agents)
+            assertTrue(huge.tiles.isCreated(huge.tiles.chunkOf(huge.tiles.index(agent.position.x, agent.position.y))));
+    }
+
+    @Test
+    public void changedChunksCoverEveryChange() {
+        GridWorld gridWorld = new GridWorld(500, 500);
+        gridWorld.setSeed(13);
+        HeadlessRunner runner = new HeadlessRunner(gridWorld);
+        runner.newGame(TilePattern.RANDOM_SPARSE, 4, 4, 0.05);
+        TileGrid tiles = gridWorld.tiles;
+        boolean[] food = new boolean[tiles.size()];
+        int[] occupants = new int[tiles.size()];
+        for (int turn = 0; turn < 50; turn++) {
+            for (int cell = 0; cell < tiles.size(); cell++) {
+                food[cell] = tiles.hasFood(cell);
+                occupants[cell] = tiles.agentCount(cell);
+            }
+            gridWorld.nextTurn();
+
+            // every chunk where food or agents changed is marked, and a handful of agents leave most chunks quiet
+            for (int cell = 0; cell < tiles.size(); cell++)
+                if (food[cell] != tiles.hasFood(cell) || occupants[cell] != tiles.agentCount(cell))
+                    assertTrue(gridWorld.changedChunks.contains(tiles.chunkOf(cell)));
+            assertTrue(gridWorld.changedChunks.size() < tiles.createdCount() / 2);
+        }
+    }
+
+    @Test
+    public void autoplayFramesTrackTheWorld() {
+        GridWorld gridWorld = new GridWorld(150, 150);
+        gridWorld.setSeed(17);
+        ChunkSet changes = new ChunkSet(gridWorld.tiles.chunkCount());
+        gridWorld.tiles.trackChanges(changes);
+        HeadlessRunner runner = new HeadlessRunner(gridWorld);
+        runner.newGame(TilePattern.RANDOM_SPARSE, 20, 20, 0.05);
+
+        // apply each frame's changed chunks to a copy of the food, skipping however many turns the engine skipped
+        TileGrid tiles = gridWorld.tiles;
+        boolean[] food = new boolean[tiles.size()];
+        AutoplayEngine autoplay = new AutoplayEngine(gridWorld, changes, 0);
+        autoplay.start();
+        long lastTurn = -1;
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (lastTurn < 200 && System.nanoTime() < deadline) {
+            RenderFrame frame = autoplay.latestFrame();
+            if (frame == null) {
+                LockSupport.parkNanos(100_000);
+                continue;
+            }
+            assertTrue(frame.turn > lastTurn);
+            lastTurn = frame.turn;
+            applyFood(frame, tiles, food);
+            autoplay.recycle(frame);
+        }
+        autoplay.stop();
+        RenderFrame last = autoplay.latestFrame();
+        if (last != null)
+            applyFood(last, tiles, food);
+        assertTrue(lastTurn >= 200);
+        for (int cell = 0; cell < tiles.size(); cell++)
+            assertEquals(tiles.hasFood(cell), food[cell]);
+
+        // at a fixed rate, a turn is played as each one falls due by the clock, and at most a tenth of a second's
+        // worth are caught up on at once
+        long turn = gridWorld.turn;
+        long step = 1_000_000_000L / 50;
+        AtomicLong clock = new AtomicLong();
+        autoplay = new AutoplayEngine(gridWorld, changes, 50, clock::get);
+        autoplay.start();
+        awaitTurn(autoplay, turn + 1);
+        clock.set(3 * step);
+        awaitTurn(autoplay, turn + 4);
+        clock.set(100 * step);
+        awaitTurn(autoplay, turn + 9);
+        autoplay.stop();
+        assertEquals(turn + 9, gridWorld.turn);
+    }
+
+    // Wait for an engine to hand over a frame of a turn at least as late as the given one
+    private static void awaitTurn(AutoplayEngine autoplay, long turn) {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            RenderFrame frame = autoplay.latestFrame();
+            if (frame != null) {
+                autoplay.recycle(frame);
+                if (frame.turn >= turn)
+                    return;
+            }
+            LockSupport.parkNanos(100_000);
+        }
+        throw new AssertionError("Turn " + turn + " was never played");
+    }
+
+    private static void applyFood(RenderFrame frame, TileGrid tiles, boolean[] food) {
+        for (int i = 0; i < frame.chunkCount; i++) {
+            int origin = tiles.chunkOrigin(frame.chunks[i]);
+            for (int y = tiles.y(origin); y < Math.min(tiles.height, tiles.y(origin) + TileGrid.CHUNK_SIZE); y++)
+                for (int x = tiles.x(origin); x < Math.min(tiles.width, tiles.x(origin) + TileGrid.CHUNK_SIZE); x++)
+                    food[tiles.index(x, y)] = false;
+            for (int f = i == 0 ? 0 : frame.foodEnd[i - 1]; f < frame.foodEnd[i]; f++)
+                food[frame.foodCells[f]] = true;
+        }
+    }
+
+    @Test
+    public void pathIsRepairedAfterDetour() {
+        GridWorld gridWorld = new GridWorld();
+        gridWorld.generateWorld(TilePattern.OPEN_FIELD);
+        TileGrid tiles = gridWorld.tiles;
+        DoveAgent agent = new DoveAgent(new Position(5, 3), "Adam");
+        gridWorld.addAgent(agent);
+        int food = tiles.index(9, 11);
+        tiles.growFood(food);
+
+        agent.searchForFood(tiles, 30);
+        assertTrue(agent.goal == food);
+        agent.move(tiles, gridWorld.STEPS_TO_LOSE_FOOD);
+
+        // food appears on a tile leading away from the goal, so off any shortest path; the agent eats it
+        int cell = tiles.index(agent.position.x, agent.position.y);
+        int distance = Math.abs(9 - agent.position.x) + Math.abs(11 - agent.position.y);
+        int detour = -1;
+        for (int adjacent : new int[] {cell + 1, cell - 1, cell - tiles.stride, cell + tiles.stride})
+            if (tiles.walkable(adjacent) && Math.abs(9 - tiles.x(adjacent)) + Math.abs(11 - tiles.y(adjacent)) > distance)
+                detour = adjacent;
+        tiles.growFood(detour);
+        agent.searchForFood(tiles, 30);
+        agent.move(tiles, gridWorld.STEPS_TO_LOSE_FOOD);
+        assertEquals(detour, tiles.index(agent.position.x, agent.position.y));
+        tiles.loseFood(detour);
+
+        // then steps straight back onto its path and follows it to the goal, without losing track of it
+        int steps = 0;
+        while (!agent.position.equals(new Position(9, 11)) && steps < 30) {
+            agent.searchForFood(tiles, 30);
+            assertTrue(agent.goal == food);
+            agent.move(tiles, gridWorld.STEPS_TO_LOSE_FOOD);
+            steps++;
+        }
+        assertEquals(distance + 1, steps);
+    }
+
+    @Test
+    public void neighbourBitsMatchWalls() {
+        GridWorld eager = new GridWorld(130, 70);
+        GridWorld lazy = new GridWorld(130, 70);
+        lazy.lazyChunks = true;
+        eager.setSeed(4);
+        lazy.setSeed(4);
+        eager.generateWorld(TilePattern.RANDOM_DENSE);
+        lazy.generateWorld(TilePattern.RANDOM_DENSE);
+        Random r = new Random(4);
+
+        for (int round = 0; round < 2; round++) {
+            for (GridWorld world : new GridWorld[] {eager, lazy}) {
+                TileGrid tiles = world.tiles;
+                for (int y = 0; y < tiles.height; y++) {
+                    for (int x = 0; x < tiles.width; x++) {
+                        int cell = tiles.index(x, y);
+                        int expected = 0;
+                        if (x + 1 < tiles.width && tiles.walkable(x + 1, y))
+                            expected |= 1 << TileGrid.RIGHT;
+                        if (x > 0 && tiles.walkable(x - 1, y))
+                            expected |= 1 << TileGrid.LEFT;
+                        if (y > 0 && tiles.walkable(x, y - 1))
+                            expected |= 1 << TileGrid.UP;
+                        if (y + 1 < tiles.height && tiles.walkable(x, y + 1))
+                            expected |= 1 << TileGrid.DOWN;
+                        assertEquals(expected, tiles.neighbours(cell));
+                    }
+                }
+            }
+
+            // walls changing afterwards, including on chunk borders, keep the bits up to date
+            for (int i = 0; i < 500; i++) {
+                int cell = eager.tiles.index(r.nextInt(eager.tiles.width), r.nextInt(eager.tiles.height));
+                boolean wall = r.nextBoolean();
+                for (GridWorld world : new GridWorld[] {eager, lazy}) {
+                    if (wall)
+                        world.tiles.setWall(cell);
+                    else
+                        world.tiles.setFloor(cell, 0.5f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void encounterMemoryIsBounded() {
+        EncounterMemory memory = new EncounterMemory(2);
+        memory.record(1, 10, Strategy.DOVE, Strategy.HAWK, false, 0);
+        memory.record(1, 11, Strategy.DOVE, Strategy.DOVE, true, 1);
+        memory.record(1, 10, Strategy.HAWK, Strategy.DOVE, true, 2);
+        assertEquals(2, memory.encounters(1, 10));
+        assertEquals(0b10, memory.moves(1, 10));
+        assertEquals(0b01, memory.ownMoves(1, 10));
+        assertEquals(0b01, memory.outcomes(1, 10));
+        assertEquals(Strategy.DOVE, memory.lastMove(1, 10));
+        assertEquals(Strategy.HAWK, memory.ownLastMove(1, 10));
+        assertEquals(EncounterMemory.WON, memory.lastOutcome(1, 10));
+        assertEquals(0, memory.encounters(10, 1));
+        assertEquals(-1, memory.lastOutcome(10, 1));
+
+        // each lane keeps only the last HISTORY encounters, without spilling into the next lane
+        for (int i = 0; i < EncounterMemory.HISTORY + 5; i++)
+            memory.record(2, 20, Strategy.HAWK, Strategy.HAWK, false, i);
+        assertEquals(EncounterMemory.HISTORY, memory.encounters(2, 20));
+        assertEquals((1 << EncounterMemory.HISTORY) - 1, memory.moves(2, 20));
+        assertEquals((1 << EncounterMemory.HISTORY) - 1, memory.ownMoves(2, 20));
+        assertEquals(0, memory.outcomes(2, 20));
+        memory.forget(2);
+
+        // a third opponent pushes out the one met least recently
+        memory.record(1, 12, Strategy.DOVE, Strategy.HAWK, false, 3);
+        assertEquals(0, memory.encounters(1, 11));
+        assertEquals(2, memory.encounters(1, 10));
+        assertEquals(Strategy.HAWK, memory.lastMove(1, 12));
+
+        memory.forget(1);
+        assertEquals(0, memory.size());
+        assertEquals(null, memory.lastMove(1, 10));
+
+        // ids can be anything, even huge, and agents coming and going keep every other agent's memories findable
+        memory = new EncounterMemory(1);
+        Map<Integer, Integer> lastOpponent = new HashMap<>();
+        Random r = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            int id = 1_000_000_000 + r.nextInt(200) * 7919;
+            if (r.nextInt(3) == 0) {
+                memory.forget(id);
+                lastOpponent.remove(id);
+            } else {
+                memory.record(id, i, Strategy.DOVE, Strategy.DOVE, true, i);
+                lastOpponent.put(id, i);
+            }
+        }
+        assertEquals(lastOpponent.size(), memory.size());
+        for (Map.Entry<Integer, Integer> remembered : lastOpponent.entrySet())
+            assertEquals(1, memory.encounters(remembered.getKey(), remembered.getValue()));
+
+        // in a world, only agents still in play remember anything
+        GridWorld gridWorld = new GridWorld(60, 60);
+        gridWorld.setSeed(6);
+        HeadlessRunner runner = new HeadlessRunner(gridWorld);
+        runner.newGame(TilePattern.OPEN_FIELD, 30, 30, 0.2);
+        for (int turn = 0; turn < 300; turn++) {
+            gridWorld.nextTurn();
+            assertTrue(gridWorld.encounters.size() <= gridWorld.agents.size());
+        }
+        assertTrue(gridWorld.encounters.size() > 0);
+
+        // after a contest, each side remembers its own move, the other's, and how it came out
+        GridWorld contest = new GridWorld(10, 3);
+        contest.setSeed(8);
+        contest.generateWorld(TilePattern.OPEN_FIELD);
+        Agent hawk = new HawkAgent(new Position(3, 1), "Hawk");
+        Agent dove = new DoveAgent(new Position(5, 1), "Dove");
+        contest.addAgent(hawk);
+        contest.addAgent(dove);
+        contest.tiles.growFood(contest.tiles.index(4, 1));
+        for (int turn = 0; turn < 10 && contest.encounters.encounters(hawk.id, dove.id) == 0; turn++)
+            contest.nextTurn();
+        assertEquals(Strategy.HAWK, contest.encounters.ownLastMove(hawk.id, dove.id));
+        assertEquals(Strategy.DOVE, contest.encounters.lastMove(hawk.id, dove.id));
+        assertEquals(EncounterMemory.WON, contest.encounters.lastOutcome(hawk.id, dove.id));
+        assertEquals(Strategy.DOVE, contest.encounters.ownLastMove(dove.id, hawk.id));
+        assertEquals(Strategy.HAWK, contest.encounters.lastMove(dove.id, hawk.id));
+        assertEquals(EncounterMemory.LOST, contest.encounters.lastOutcome(dove.id, hawk.id));
+    }
+
+    @Test
+    public void strategiesAreTableDriven() throws IOException {
+        RandomStream random = new RandomStream(1);
+        int owner = StrategyRegistry.OWNER, met = StrategyRegistry.MET;
+        int lastHawk = met | StrategyRegistry.LAST_HAWK | StrategyRegistry.EVER_HAWK;
+        int hawkBefore = met | StrategyRegistry.EVER_HAWK;
+        assertEquals(Strategy.HAWK, StrategyRegistry.move(StrategyRegistry.BOURGEOIS, owner, random));
+        assertEquals(Strategy.DOVE, StrategyRegistry.move(StrategyRegistry.BOURGEOIS, met, random));
+        assertEquals(Strategy.DOVE, StrategyRegistry.move(StrategyRegistry.TIT_FOR_TAT, 0, random));
+        assertEquals(Strategy.HAWK, StrategyRegistry.move(StrategyRegistry.TIT_FOR_TAT, lastHawk, random));
+        assertEquals(Strategy.DOVE, StrategyRegistry.move(StrategyRegistry.TIT_FOR_TAT, hawkBefore, random));
+        assertEquals(Strategy.HAWK, StrategyRegistry.move(StrategyRegistry.GRUDGER, hawkBefore, random));
+
+        // Pavlov wins and stays, or loses and switches
+        int won = StrategyRegistry.WON, playedHawk = StrategyRegistry.PLAYED_HAWK;
+        assertEquals(Strategy.DOVE, StrategyRegistry.move(StrategyRegistry.PAVLOV, owner, random));
+        assertEquals(Strategy.HAWK, StrategyRegistry.move(StrategyRegistry.PAVLOV, met | playedHawk | won, random));
+        assertEquals(Strategy.DOVE, StrategyRegistry.move(StrategyRegistry.PAVLOV, met | playedHawk, random));
+        assertEquals(Strategy.DOVE, StrategyRegistry.move(StrategyRegistry.PAVLOV, met | won, random));
+        assertEquals(Strategy.HAWK, StrategyRegistry.move(StrategyRegistry.PAVLOV, lastHawk, random));
+        assertEquals(StrategyRegistry.HAWK, StrategyRegistry.byName("Hawk"));
+
+        // mixed strategies are registered once, and play Hawk about as often as they should
+        int mixed = StrategyRegistry.mixed(0.25);
+        assertEquals(mixed, StrategyRegistry.mixed(0.25));
+        assertEquals(StrategyRegistry.mixed(0.3), StrategyRegistry.mixed(0.1 + 0.2));
+        assertEquals("0.300-Hawk", StrategyRegistry.name(StrategyRegistry.mixed(0.3)));
+        int hawks = 0;
+        for (int i = 0; i < 10000; i++)
+            if (StrategyRegistry.move(mixed, owner, random) == Strategy.HAWK)
+                hawks++;
+        assertTrue(hawks > 2300 && hawks < 2700);
+
+        // a world of every kind still snapshots and resumes identically
+        GridWorld gridWorld = new GridWorld(80, 80);
+        gridWorld.setSeed(21);
+        HeadlessRunner runner = new HeadlessRunner(gridWorld);
+        runner.newGame(TilePattern.OPEN_FIELD, 10, 10, 0.2);
+        for (int strategy : new int[] {StrategyRegistry.BOURGEOIS, StrategyRegistry.GRUDGER,
+                StrategyRegistry.TIT_FOR_TAT, StrategyRegistry.PAVLOV, mixed})
+            runner.addAgents(strategy, 10);
+        runner.run(100);
+        Path file = Files.createTempFile("world", ".snapshot");
+        try {
+            WorldSnapshot.save(gridWorld, file);
+            GridWorld restored = WorldSnapshot.load(file);
+            runner.run(100);
+            new HeadlessRunner(restored).run(100);
+            assertEquals(describe(gridWorld), describe(restored));
+
+            // a strategy saved under a name that plays differently here is refused, rather than silently swapped
+            int clash = StrategyRegistry.register("Clash", 0, situation -> 0);
+            runner.addAgents(clash, 1);
+            WorldSnapshot.save(gridWorld, file);
+            byte[] bytes = Files.readAllBytes(file);
+            byte[] name = "Clash".getBytes(StandardCharsets.UTF_8);
+            int at = 0;
+            while (!Arrays.equals(name, Arrays.copyOfRange(bytes, at, at + name.length)))
+                at++;
+            ByteBuffer.wrap(bytes).putDouble(at + name.length + Integer.BYTES, 1.0);
+            Files.write(file, bytes);
+            try {
+                WorldSnapshot.load(file);
+                assertTrue(false);
+            } catch (IOException expected) {
+                assertTrue(expected.getMessage().contains("Clash"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void lineageTracksKin() throws IOException {
+        Lineage lineage = new Lineage();
+        lineage.clear(5);
+        lineage.addFounder(5, 0);
+        lineage.addFounder(6, 0);
+        lineage.addChild(7, 5, 3);      // 7 and 8 are siblings
+        lineage.addChild(8, 5, 4);
+        lineage.addChild(9, 7, 9);      // 9 and 10 are cousins
+        lineage.addChild(10, 8, 9);
+        assertEquals(2, lineage.generation(10));
+        assertEquals(5, lineage.founder(10));
+        assertEquals(Lineage.NONE, lineage.parent(6));
+        assertTrue(lineage.isAncestor(5, 9, 2));
+        assertFalse(lineage.isAncestor(5, 9, 1));
+        assertFalse(lineage.isAncestor(8, 9, 2));
+        assertTrue(lineage.areKin(7, 8, 1));
+        assertFalse(lineage.areKin(9, 10, 1));
+        assertTrue(lineage.areKin(9, 10, 2));
+        assertTrue(lineage.areKin(9, 8, 2));
+        assertFalse(lineage.areKin(9, 6, 10));
+
+        // a world records every birth, and children no longer grow their parents' names
+        GridWorld gridWorld = new GridWorld(60, 60);
+        gridWorld.setSeed(8);
+        HeadlessRunner runner = new HeadlessRunner(gridWorld);
+        runner.newGame(TilePattern.OPEN_FIELD, 20, 20, 0.3);
+        runner.run(300);
+        assertTrue(gridWorld.lineage.size() > 40);
+        for (Agent agent : gridWorld.agents) {
+            assertEquals(agent.parent_id, gridWorld.lineage.parent(agent.id));
+            assertEquals(agent.birth_turn, gridWorld.lineage.birthTurn(agent.id));
+            assertFalse(agent.toString().contains("_x"));
+        }
+        Path file = Files.createTempFile("family", ".csv");
+        try {
+            gridWorld.lineage.writeTree(file);
+            assertEquals(gridWorld.lineage.size() + 1, Files.readAllLines(file).size());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void parallelGenerationMatchesSerial() {
+        GridWorld parallel = new GridWorld(300, 200);
+        GridWorld serial = new GridWorld(300, 200);
+        serial.parallelGeneration = false;
+        for (TilePattern pattern : TilePattern.values()) {
+            parallel.setSeed(4);
+            serial.setSeed(4);
+            parallel.generateWorld(pattern);
+            serial.generateWorld(pattern);
+            for (int cell = 0; cell < serial.tiles.size(); cell++) {
+                assertEquals(serial.tiles.walkable(cell), parallel.tiles.walkable(cell));
+                assertEquals(serial.tiles.fertility(cell), parallel.tiles.fertility(cell), 0);
+                assertEquals(serial.tiles.neighbours(cell), parallel.tiles.neighbours(cell));
+            }
+        }
+
+        // corridors always have a way through; dense walls wall off pockets, unless worlds are made connected
+        parallel.generateWorld(TilePattern.CORRIDORS);
+        assertTrue(parallel.regions().isConnected());
+        parallel.setSeed(4);
+        parallel.generateWorld(TilePattern.RANDOM_DENSE);
+        Components pockets = parallel.regions();
+        assertTrue(pockets.count() > 1);
+        parallel.connectedWorlds = true;
+        parallel.setSeed(4);
+        parallel.generateWorld(TilePattern.RANDOM_DENSE);
+        Components connected = parallel.regions();
+        assertTrue(connected.isConnected());
+        assertEquals(pockets.size(pockets.largest()), connected.size(connected.largest()));
+        for (int i = 0; i < 1000; i++) {
+            Position position = parallel.getWalkableTile();
+            assertEquals(connected.largest(), connected.of(parallel.tiles.index(position.x, position.y)));
+        }
+        parallel.lazyChunks = true;
+        try {
+            parallel.generateWorld(TilePattern.RANDOM_DENSE);
+            assertTrue(false);
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("connected"));
+        }
+
+        // a world with nowhere to stand can't place agents, rather than looking forever
+        for (boolean lazy : new boolean[] {false, true}) {
+            GridWorld walls = new GridWorld(2, 2);
+            walls.lazyChunks = lazy;
+            walls.generateWorld(TilePattern.OPEN_FIELD);
+            try {
+                walls.getWalkableTile();
+                assertTrue(false);
+            } catch (NoSuchElementException expected) {
+                assertTrue(walls.tiles.allCreated());
+            }
+        }
+    }
+
+    @Test
+    public void bitboardWorldPlaysTheSame() {
+        for (boolean lazy : new boolean[] {false, true}) {
+            GridWorld plain = new GridWorld(150, 100);
+            GridWorld bitboard = new GridWorld(150, 100);
+            bitboard.bitboardMode = true;
+            for (GridWorld world : new GridWorld[] {plain, bitboard}) {
+                world.lazyChunks = lazy;
+                world.setSeed(31);
+                new HeadlessRunner(world).newGame(TilePattern.RANDOM_SPARSE, 40, 40, 0.2);
+            }
+            new HeadlessRunner(plain).run(150);
+            new HeadlessRunner(bitboard).run(150);
+            assertEquals(describe(plain), describe(bitboard));
+
+            // the bitplanes match the tiles, and what's near food matches a neighbour by neighbour look
+            TileGrid tiles = bitboard.tiles;
+            Bitboard bits = tiles.bitboard();
+            bits.updateNearFood();
+            assertTrue(bits.chunks() <= tiles.createdCount());
+            for (int y = 0; y < tiles.height; y++) {
+                for (int x = 0; x < tiles.width; x++) {
+                    int cell = tiles.index(x, y);
+                    if (!tiles.isCreated(tiles.chunkOf(cell)))
+                        continue;
+                    assertEquals(tiles.walkable(cell), bits.walkable(cell));
+                    assertEquals(tiles.hasFood(cell), bits.hasFood(cell));
+                    assertEquals(tiles.agentCount(cell) > 0, bits.occupied(cell));
+                    assertEquals(tiles.neighbours(cell) & ~occupiedNeighbours(tiles, cell), bits.freeNeighbours(cell));
+                    int food = 0;
+                    for (int m = tiles.neighbours(cell); m != 0; m &= m - 1)
+                        if (tiles.hasFood(tiles.adjacent(cell, Integer.numberOfTrailingZeros(m))))
+                            food |= m & -m;
+                    assertEquals(food, bits.foodNeighbours(cell));
+                    assertEquals(tiles.walkable(cell) && food != 0, bits.nearFood(cell));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bitboardRowsDontWrap() {
+        // a world exactly a chunk wide has no padding, so the cells either side of each row end are in other rows
+        TileGrid tiles = new TileGrid(64, 3);
+        tiles.useBitboard(true);
+        for (int cell = 0; cell < tiles.size(); cell++)
+            tiles.setFloor(cell, 1f);
+        tiles.growFood(tiles.index(0, 1));
+        tiles.growFood(tiles.index(63, 0));
+        Bitboard bits = tiles.bitboard();
+        for (boolean updated : new boolean[] {false, true}) {
+            if (updated)
+                bits.updateNearFood();
+            assertEquals(1 << TileGrid.LEFT, bits.freeNeighbours(tiles.index(63, 1)) & (1 << TileGrid.LEFT |
+                    1 << TileGrid.RIGHT));
+            assertEquals(0, bits.foodNeighbours(tiles.index(63, 0)) & 1 << TileGrid.RIGHT);
+            assertFalse(bits.nearFood(tiles.index(63, 0)));
+            assertFalse(bits.nearFood(tiles.index(0, 1)));
+            assertTrue(bits.nearFood(tiles.index(62, 0)));
+            assertTrue(bits.nearFood(tiles.index(0, 2)));
+        }
+    }
+
+    private static int occupiedNeighbours(TileGrid tiles, int cell) {
+        int occupied = 0;
+        for (int m = tiles.neighbours(cell); m != 0; m &= m - 1)
+            if (tiles.agentCount(tiles.adjacent(cell, Integer.numberOfTrailingZeros(m))) > 0)
+                occupied |= m & -m;
+        return occupied;
+    }
+
+    @Test
+    public void metricsCountEveryStrategy() throws IOException, InterruptedException {
+        GridWorld gridWorld = new GridWorld(60, 60);
+        gridWorld.setSeed(12);
+        HeadlessRunner runner = new HeadlessRunner(gridWorld);
+        runner.newGame(TilePattern.OPEN_FIELD, 0, 0, 0.2);
+        runner.addAgents(StrategyRegistry.BOURGEOIS, 15);
+        runner.addAgents(StrategyRegistry.mixed(0.5), 15);
+
+        Path file = Files.createTempFile("metrics", ".bin");
+        try {
+            runner.recordMetrics(file);
+            runner.run(200);
+            runner.finish();
+            MetricsRecorder.Series series = MetricsRecorder.read(file);
+            int last = series.length - 1;
+            assertEquals(gridWorld.agents.size(), series.agents[last]);
+            assertEquals(0, series.doves[last] + series.hawks[last]);
+            long food = 0;
+            for (Agent agent : gridWorld.agents)
+                food += agent.food;
+            assertEquals((float) food / gridWorld.agents.size(), series.meanFood[last], 1e-3);
+        } finally {
+            Files.delete(file);
+        }
+
+        // sweeps count survivors by strategy, not by class
+        int[] counts = new int[StrategyRegistry.BOURGEOIS + 1];
+        counts[StrategyRegistry.BOURGEOIS] = 20;
+        List<SweepRunner.Result> results = new SweepRunner(1).startWith(TilePattern.OPEN_FIELD, counts, 0.2)
+                .run(Collections.singletonList(new WorldSettings()), 100, 3);
+        SweepRunner.Result result = results.get(0);
+        assertTrue(result.agents > 0);
+        assertEquals(result.agents, result.count(StrategyRegistry.BOURGEOIS));
+        assertEquals(0.0, result.hawkRatio(), 0);
+    }
+
 }
@@ -0,0 +1,198 @@
+package Tiles;
+
+import java.util.Arrays;
+
+/**
+ * Walls, food and occupancy of a TileGrid as bitplanes: one bit per cell, kept a chunk at a time. A chunk is 64 tiles
+ * wide, so each of its rows is a single long, and the tiles next to a cell are the bits one place either side of it
+ * and the same bit in the rows above and below. That makes questions about a cell's neighbours a few bit reads, and
+ * the same question for a whole chunk a pass of shifts, ANDs and ORs over its 64 words, which the JIT can turn into
+ * vector instructions.
+ *
+ * A chunk's words are only allocated once something in it is set, so the planes cost memory in step with the chunks
+ * created, as the grid's own arrays do. Neighbours are never read across the edge of the world: cells in column
+ * width - 1 have no right-hand neighbour even when the row has no padding after it. A TileGrid keeps its bitboard up
+ * to date as tiles change, once it's asked to with useBitboard()
+ */
+public class Bitboard {
+
+    private static final int ROWS = TileGrid.CHUNK_SIZE;
+
+    private final TileGrid tiles;
+    private final int chunksX;                  // chunks across the stride, including padding
+    // Per chunk, null until something in it is set, then one word per row
+    private final long[][] walkable;
+    private final long[][] food;
+    private final long[][] occupied;            // cells with at least one agent
+    private final long[][] nearFood;            // walkable cells next to food, as of the last updateNearFood()
+    private final ChunkSet stale;               // chunks whose nearFood words may be out of date
+
+    Bitboard(TileGrid tiles) {
+        this.tiles = tiles;
+        this.chunksX = tiles.stride >>> TileGrid.CHUNK_BITS;
+        this.walkable = new long[tiles.chunkCount()][];
+        this.food = new long[tiles.chunkCount()][];
+        this.occupied = new long[tiles.chunkCount()][];
+        this.nearFood = new long[tiles.chunkCount()][];
+        this.stale = new ChunkSet(tiles.chunkCount());
+    }
+
+    private void set(long[][] plane, int cell, boolean value) {
+        int chunk = tiles.chunkOf(cell);
+        if (plane[chunk] == null) {
+            if (!value)
+                return;
+            walkable[chunk] = new long[ROWS];
+            food[chunk] = new long[ROWS];
+            occupied[chunk] = new long[ROWS];
+            nearFood[chunk] = new long[ROWS];
+            stale.add(chunk);
+        }
+        int row = tiles.y(cell) & (ROWS - 1);
+        if (value)
+            plane[chunk][row] |= 1L << cell;
+        else
+            plane[chunk][row] &= ~(1L << cell);
+    }
+
+    // Set a cell's food or walkable bit, either of which changes what's near food in its chunk and the ones beside it
+    void setFood(int cell, boolean value) {
+        set(food, cell, value);
+        touched(cell);
+    }
+
+    void setWalkable(int cell, boolean value) {
+        set(walkable, cell, value);
+        touched(cell);
+    }
+
+    void setOccupied(int cell, boolean value) {
+        set(occupied, cell, value);
+    }
+
+    private void touched(int cell) {
+        int chunk = tiles.chunkOf(cell);
+        stale.add(chunk);
+        int x = tiles.x(cell) & (ROWS - 1), y = tiles.y(cell) & (ROWS - 1);
+        if (x == 0 && chunk % chunksX > 0)
+            stale.add(chunk - 1);
+        if (x == ROWS - 1 && chunk % chunksX < chunksX - 1)
+            stale.add(chunk + 1);
+        if (y == 0 && chunk >= chunksX)
+            stale.add(chunk - chunksX);
+        if (y == ROWS - 1 && chunk + chunksX < walkable.length)
+            stale.add(chunk + chunksX);
+    }
+
+    private boolean get(long[][] plane, int cell) {
+        long[] rows = plane[tiles.chunkOf(cell)];
+        return rows != null && (rows[tiles.y(cell) & (ROWS - 1)] & 1L << cell) != 0;
+    }
+
+    void clear() {
+        Arrays.fill(walkable, null);
+        Arrays.fill(food, null);
+        Arrays.fill(occupied, null);
+        Arrays.fill(nearFood, null);
+        stale.clear();
+    }
+
+    public boolean walkable(int cell) {
+        return get(walkable, cell);
+    }
+
+    public boolean hasFood(int cell) {
+        return get(food, cell);
+    }
+
+    public boolean occupied(int cell) {
+        return get(occupied, cell);
+    }
+
+    /**
+     * Which of the tiles next to a cell have food, with the same bits as TileGrid.neighbours(). Only meaningful for
+     * cells inside the world
+     */
+    public int foodNeighbours(int cell) {
+        return around(food, cell);
+    }
+
+    /**
+     * Which of the tiles next to a cell are walkable and empty of agents, with the same bits as TileGrid.neighbours()
+     */
+    public int freeNeighbours(int cell) {
+        return around(walkable, cell) & ~around(occupied, cell);
+    }
+
+    // As TileGrid.computeNeighbours(), tiles off the edge of the world are never set, whatever the row padding
+    private int around(long[][] plane, int cell) {
+        int x = tiles.x(cell), y = tiles.y(cell);
+        int bits = 0;
+        if (x + 1 < tiles.width && get(plane, cell + 1))
+            bits |= 1 << TileGrid.RIGHT;
+        if (x > 0 && get(plane, cell - 1))
+            bits |= 1 << TileGrid.LEFT;
+        if (y > 0 && get(plane, cell - tiles.stride))
+            bits |= 1 << TileGrid.UP;
+        if (y + 1 < tiles.height && get(plane, cell + tiles.stride))
+            bits |= 1 << TileGrid.DOWN;
+        return bits;
+    }
+
+    /**
+     * Work out which walkable cells have food on a tile next to them, in every chunk where anything has changed since
+     * the last time. An agent on any other cell can skip looking at its neighbours for food
+     */
+    public void updateNearFood() {
+        for (int i = 0; i < stale.size(); i++) {
+            int chunk = stale.get(i);
+            if (food[chunk] != null)
+                updateNearFood(chunk);
+        }
+        stale.clear();
+    }
+
+    private void updateNearFood(int chunk) {
+        int chunkX = chunk % chunksX;
+        long[] f = food[chunk];
+        long[] w = walkable[chunk];
+        long[] out = nearFood[chunk];
+        // chunks off the edge of the world have no words, so read as no food
+        long[] left = chunkX > 0 ? food[chunk - 1] : null;
+        long[] right = chunkX < chunksX - 1 ? food[chunk + 1] : null;
+        long[] up = chunk >= chunksX ? food[chunk - chunksX] : null;
+        long[] down = chunk + chunksX < food.length ? food[chunk + chunksX] : null;
+        // columns and rows of this chunk inside the world, so nothing is read from past the last column or row
+        int columns = tiles.width - (chunkX << TileGrid.CHUNK_BITS);
+        long inWorld = columns >= ROWS ? -1L : (1L << columns) - 1;
+        int rows = Math.min(ROWS, tiles.height - (chunk / chunksX << TileGrid.CHUNK_BITS));
+        for (int row = 0; row < rows; row++) {
+            long here = f[row] & inWorld;
+            long fromLeft = here << 1 | (left != null ? left[row] >>> 63 : 0);      // food at cell - 1
+            long fromRight = here >>> 1 | (right != null ? right[row] << 63 : 0);   // food at cell + 1
+            long fromUp = row > 0 ? f[row - 1] : up != null ? up[ROWS - 1] : 0;
+            long fromDown = row < rows - 1 ? f[row + 1] : rows == ROWS && down != null ? down[0] : 0;
+            out[row] = w[row] & inWorld & (fromLeft | fromRight | fromUp | fromDown);
+        }
+    }
+
+    /**
+     * Whether a walkable cell has food next to it. Read from the words updateNearFood() made if nothing near the cell
+     * has changed since, otherwise from the cell's neighbours
+     */
+    public boolean nearFood(int cell) {
+        int chunk = tiles.chunkOf(cell);
+        if (stale.contains(chunk))
+            return walkable(cell) && foodNeighbours(cell) != 0;
+        return get(nearFood, cell);
+    }
+
+    // Number of chunks with words allocated in each plane
+    public int chunks() {
+        int chunks = 0;
+        for (long[] rows : walkable)
+            if (rows != null)
+                chunks++;
+        return chunks;
+    }
+}
@@ -0,0 +1,14 @@
+package Tiles;
+
+/**
+ * Fills in the tiles of a TileGrid chunk the first time it's touched
+ */
+public interface ChunkGenerator {
+
+    /**
+     * Set every tile of a newly created chunk with setWall() or setFloor(). Tiles the generator doesn't set stay walls
+     * @param tiles the grid the chunk belongs to
+     * @param chunk index of the chunk; tiles.chunkOrigin(chunk) is its top-left cell
+     */
+    void generate(TileGrid tiles, int chunk);
+}
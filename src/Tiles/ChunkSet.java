@@ -0,0 +1,49 @@
+package Tiles;
+
+import java.util.Arrays;
+
+/**
+ * A set of chunk indices, e.g. the chunks of a TileGrid that have changed since some point. Adding, checking and
+ * iterating are all proportional to the number of chunks in the set rather than in the world: membership is a bitset,
+ * and members are also kept in a list in the order they were added
+ */
+public class ChunkSet {
+
+    private final long[] bits;
+    private int[] members = new int[16];
+    private int size = 0;
+
+    // An empty set that can hold chunks from 0 to capacity - 1
+    public ChunkSet(int capacity) {
+        this.bits = new long[(capacity + 63) >>> 6];
+    }
+
+    public boolean contains(int chunk) {
+        return (bits[chunk >>> 6] & (1L << chunk)) != 0;
+    }
+
+    public void add(int chunk) {
+        long bit = 1L << chunk;
+        if ((bits[chunk >>> 6] & bit) != 0)
+            return;
+        bits[chunk >>> 6] |= bit;
+        if (size == members.length)
+            members = Arrays.copyOf(members, size * 2);
+        members[size++] = chunk;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The i-th chunk added, for i in [0, size())
+    public int get(int i) {
+        return members[i];
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++)
+            bits[members[i] >>> 6] = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,104 @@
+package Tiles;
+
+import java.util.Arrays;
+
+/**
+ * The connected regions of a TileGrid: groups of walkable tiles an agent can walk between. Found in two passes over the
+ * grid with union-find, joining each walkable tile to the walkable tiles left of and above it, so it costs one int per
+ * cell however twisty the world is.
+ *
+ * Covers the whole world, so creates any chunks that don't exist yet. Walls changed afterwards aren't reflected
+ */
+public class Components {
+
+    public static final int NONE = -1;          // component of a wall
+
+    private final int[] component;              // per cell: a parent during the pass, then the component number
+    private int[] sizes;                        // number of tiles in each component
+    private int largest = NONE;
+
+    public Components(TileGrid tiles) {
+        this.component = new int[tiles.size()];
+        Arrays.fill(component, NONE);
+        for (int y = 0; y < tiles.height; y++) {
+            for (int x = 0; x < tiles.width; x++) {
+                int cell = tiles.index(x, y);
+                if (!tiles.walkable(cell))
+                    continue;
+                component[cell] = cell;
+                int m = tiles.neighbours(cell);
+                if ((m & 1 << TileGrid.LEFT) != 0)
+                    union(cell, cell - 1);
+                if ((m & 1 << TileGrid.UP) != 0)
+                    union(cell, cell - tiles.stride);
+            }
+        }
+
+        // Every parent comes before its child in row order, so going through in row order, a root gets the next
+        // number and anything else copies its parent's, which has already been numbered
+        int count = 0;
+        sizes = new int[16];
+        for (int y = 0; y < tiles.height; y++) {
+            for (int x = 0; x < tiles.width; x++) {
+                int cell = tiles.index(x, y);
+                int parent = component[cell];
+                if (parent == NONE)
+                    continue;
+                if (parent == cell) {
+                    if (count == sizes.length)
+                        sizes = Arrays.copyOf(sizes, count * 2);
+                    component[cell] = count++;
+                } else {
+                    component[cell] = component[parent];
+                }
+                sizes[component[cell]]++;
+            }
+        }
+        sizes = Arrays.copyOf(sizes, count);
+        for (int c = 0; c < count; c++)
+            if (largest == NONE || sizes[c] > sizes[largest])
+                largest = c;
+    }
+
+    // Number of separate regions
+    public int count() {
+        return sizes.length;
+    }
+
+    // The region a tile is in, numbered from 0 in the order of their first tiles, or NONE for walls and padding
+    public int of(int cell) {
+        return component[cell];
+    }
+
+    // Number of tiles in a region
+    public int size(int component) {
+        return sizes[component];
+    }
+
+    // The region with the most tiles, or NONE if nothing is walkable
+    public int largest() {
+        return largest;
+    }
+
+    // Whether every walkable tile can be reached from every other
+    public boolean isConnected() {
+        return count() <= 1;
+    }
+
+    private int find(int cell) {
+        while (component[cell] != cell) {
+            component[cell] = component[component[cell]];      // path halving
+            cell = component[cell];
+        }
+        return cell;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a), rootB = find(b);
+        // the lower cell stays the root, so every parent comes before its children in row order
+        if (rootA < rootB)
+            component[rootB] = rootA;
+        else if (rootB < rootA)
+            component[rootA] = rootB;
+    }
+}
@@ -0,0 +1,11 @@
+package Tiles;
+
+/**
+ * Receives notice whenever food appears on or disappears from a tile in a TileGrid
+ */
+public interface FoodListener {
+
+    void foodGrown(int cell);
+
+    void foodLost(int cell);
+}
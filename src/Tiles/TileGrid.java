@@ -0,0 +1,578 @@
+package Tiles;
+
+import GameLogic.SnapshotInput;
+import GameLogic.SnapshotOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+
+/**
+ * Compact storage for every tile in the world. Rather than one object per tile, each tile is a cell index
+ * (y * stride + x) into primitive arrays, so very large worlds stay small in memory and cheap to scan.
+ *
+ * The world is split into square chunks of CHUNK_SIZE x CHUNK_SIZE tiles, and a chunk's arrays are only created the
+ * first time one of its tiles is touched. If a ChunkGenerator is set, it fills in each chunk as it's created, so huge
+ * worlds can be generated a piece at a time as agents explore them, and regions nobody visits cost no memory.
+ * Reading a tile in a chunk that can't be generated (no generator, or past the edge of the world) reads a bare wall.
+ * Creating chunks isn't thread-safe, so tiles read in parallel must already have had their chunks created.
+ *
+ * The row stride is a power of two, at least CHUNK_SIZE, so converting between cells, coordinates and chunks is just
+ * shifts and masks. Cells past the right-hand edge of each row are padding, and are always walls.
+ *
+ * Any number of ChunkSets can track which chunks change, where a change is a chunk being created, a tile being set,
+ * food growing or being eaten, or an agent arriving or leaving. Anything that would otherwise scan the whole world
+ * every turn, such as drawing, can then look at just the chunks that have changed.
+ *
+ * Which of each tile's four neighbours are walkable is kept as a bitmask, worked out a chunk at a time the first time
+ * it's asked for and updated whenever a wall changes, so going through a tile's neighbours is a loop over set bits
+ * rather than four bounds checks and lookups.
+ *
+ * Optionally, the grid also keeps walls, food and occupancy as a Bitboard, for questions about whole neighbourhoods
+ * that are cheaper asked of bits than of chunks.
+ *
+ * Walls can't be walked through and never contain food. Floor tiles can be traversed by agents, may contain food,
+ * and have a fertility in [0-1] indicating the likelihood of food growing there
+ */
+public class TileGrid {
+
+    // Bit flags stored per cell
+    static final byte WALKABLE = 1;
+    static final byte FOOD = 2;
+
+    // Directions to neighbouring tiles, and their bits in neighbours()
+    public static final int RIGHT = 0;
+    public static final int LEFT = 1;
+    public static final int UP = 2;
+    public static final int DOWN = 3;
+
+    public static final int CHUNK_BITS = 6;
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;   // width and height of each chunk, in tiles
+    public static final int CHUNK_AREA = CHUNK_SIZE * CHUNK_SIZE;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    public final int width;             // number of tiles horizontally (x)
+    public final int height;            // number of tiles vertically (y)
+    public final int stride;            // difference between the cells of vertically adjacent tiles
+    private final int strideBits;
+    private final int chunksX;          // number of chunks across the stride, including padding
+    private final int chunksY;
+
+    // Per chunk, null until the chunk is created, then indexed by local(cell)
+    private final byte[][] cells;       // WALKABLE/FOOD flags for each tile
+    private final int[][] occupancy;    // number of agents present at each tile
+    private final float[][] fertility;  // [0-1], likelihood of food growing at each tile; always 0 for walls
+    private final byte[][] neighbours;  // walkable-neighbour bits for each tile; null until first asked for
+    private int[] created = new int[16];    // every created chunk, in the order they were created
+    private int createdCount = 0;
+
+    private ChunkGenerator generator;   // fills in chunks as they're created, if set
+    private ChunkSet[] changeTrackers = new ChunkSet[0];   // each collects every chunk changed since it was cleared
+    private int foodCount = 0;          // number of tiles with food on them
+    private FoodListener foodListener;  // told about every change to the food layer, if set
+    private Bitboard bitboard;          // kept up to date with every tile, if in use
+
+    public TileGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.stride = Math.max(CHUNK_SIZE, Integer.highestOneBit(Math.max(1, width - 1)) << 1);
+        this.strideBits = Integer.numberOfTrailingZeros(stride);
+        this.chunksX = stride >> CHUNK_BITS;
+        this.chunksY = (height + CHUNK_MASK) >> CHUNK_BITS;
+        if ((long) stride * chunksY * CHUNK_SIZE > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("World is too big: " + width + " x " + height);
+        this.cells = new byte[chunksX * chunksY][];
+        this.occupancy = new int[chunksX * chunksY][];
+        this.fertility = new float[chunksX * chunksY][];
+        this.neighbours = new byte[chunksX * chunksY][];
+    }
+
+    // Total number of cells, including padding. Every cell index is in [0, size())
+    public int size() {
+        return height << strideBits;
+    }
+
+    // Convert (x, y) coordinates into a cell index
+    public int index(int x, int y) {
+        return (y << strideBits) | x;
+    }
+
+    public int x(int cell) {
+        return cell & (stride - 1);
+    }
+
+    public int y(int cell) {
+        return cell >>> strideBits;
+    }
+
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    // Number of chunks, created or not
+    public int chunkCount() {
+        return cells.length;
+    }
+
+    // The chunk a cell belongs to
+    public int chunkOf(int cell) {
+        return (cell >>> (strideBits + CHUNK_BITS)) * chunksX + ((cell & (stride - 1)) >>> CHUNK_BITS);
+    }
+
+    // Top-left cell of a chunk
+    public int chunkOrigin(int chunk) {
+        return index((chunk % chunksX) << CHUNK_BITS, (chunk / chunksX) << CHUNK_BITS);
+    }
+
+    // Position of a cell within its chunk's arrays
+    private int local(int cell) {
+        return ((cell >>> strideBits) & CHUNK_MASK) << CHUNK_BITS | (cell & CHUNK_MASK);
+    }
+
+    public boolean isCreated(int chunk) {
+        return cells[chunk] != null;
+    }
+
+    // Whether a chunk's walkable-neighbour bits have been worked out, so reading them won't create anything
+    public boolean hasNeighbours(int chunk) {
+        return neighbours[chunk] != null;
+    }
+
+    // Number of chunks created so far
+    public int createdCount() {
+        return createdCount;
+    }
+
+    // Whether every chunk in the world has been created
+    public boolean allCreated() {
+        return createdCount == chunksY * ((width + CHUNK_MASK) >> CHUNK_BITS);
+    }
+
+    // The i-th chunk to be created, for i in [0, createdCount())
+    public int createdChunk(int i) {
+        return created[i];
+    }
+
+    /**
+     * Set what fills in each chunk as it's created, or null to leave new chunks as walls
+     */
+    public void setGenerator(ChunkGenerator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * Add every chunk that changes from now on to a set. The set is never cleared by the grid; whoever owns it clears it
+     * after dealing with the changes
+     */
+    public void trackChanges(ChunkSet changes) {
+        changeTrackers = Arrays.copyOf(changeTrackers, changeTrackers.length + 1);
+        changeTrackers[changeTrackers.length - 1] = changes;
+    }
+
+    public void stopTracking(ChunkSet changes) {
+        for (int i = 0; i < changeTrackers.length; i++) {
+            if (changeTrackers[i] == changes) {
+                ChunkSet[] remaining = new ChunkSet[changeTrackers.length - 1];
+                System.arraycopy(changeTrackers, 0, remaining, 0, i);
+                System.arraycopy(changeTrackers, i + 1, remaining, i, remaining.length - i);
+                changeTrackers = remaining;
+                return;
+            }
+        }
+    }
+
+    private void changed(int chunk) {
+        for (ChunkSet changes : changeTrackers)
+            changes.add(chunk);
+    }
+
+    // Whether a chunk overlaps the world at all, rather than being made entirely of row padding
+    private boolean inWorld(int chunk) {
+        return (chunk % chunksX) << CHUNK_BITS < width;
+    }
+
+    /**
+     * Create a chunk if it doesn't exist yet, filling it in with the generator
+     * @return false if the chunk doesn't exist and never will, as it's entirely padding
+     */
+    public boolean create(int chunk) {
+        if (cells[chunk] != null)
+            return true;
+        if (!inWorld(chunk))
+            return false;
+        allocate(chunk);
+        if (generator != null)
+            generator.generate(this, chunk);
+        return true;
+    }
+
+    // Give a chunk its arrays, all walls, and record it as created
+    private void allocate(int chunk) {
+        cells[chunk] = new byte[CHUNK_AREA];
+        occupancy[chunk] = new int[CHUNK_AREA];
+        fertility[chunk] = new float[CHUNK_AREA];
+        if (createdCount == created.length)
+            created = Arrays.copyOf(created, Math.max(createdCount * 2, chunkCount()));
+        created[createdCount++] = chunk;
+        changed(chunk);
+    }
+
+    // Create every chunk in the world, along with its neighbour bits
+    public void createAll() {
+        for (int chunk = 0; chunk < chunkCount(); chunk++)
+            create(chunk);
+        for (int chunk = 0; chunk < chunkCount(); chunk++)
+            if (neighbours[chunk] == null)
+                computeNeighbours(chunk);
+    }
+
+    /**
+     * Create every chunk as createAll() does, generating each row of chunks in parallel if no chunk exists yet. Every
+     * chunk is allocated up front, so the generator can run for one band of rows without touching anything another
+     * band does, as long as it only sets tiles in the chunk it's given and doesn't grow food. Generators that depend
+     * only on the chunk, like one random stream per chunk, fill in exactly the same world as they would one by one
+     */
+    public void createAll(boolean parallel) {
+        if (!parallel || createdCount > 0) {
+            createAll();
+            return;
+        }
+        for (int chunk = 0; chunk < chunkCount(); chunk++)
+            if (inWorld(chunk))
+                allocate(chunk);
+        if (generator != null)
+            IntStream.range(0, chunksY).parallel().forEach(band -> {
+                for (int chunk = band * chunksX; chunk < (band + 1) * chunksX; chunk++)
+                    if (cells[chunk] != null)
+                        generator.generate(this, chunk);
+            });
+        // each chunk's bits only read the chunks around it, which are all finished now
+        IntStream.range(0, chunksY).parallel().forEach(band -> {
+            for (int chunk = band * chunksX; chunk < (band + 1) * chunksX; chunk++)
+                if (cells[chunk] != null)
+                    computeNeighbours(chunk);
+        });
+    }
+
+    /**
+     * Create every chunk within a number of chunks of the one containing a cell, e.g. everything an agent could see
+     * before it next moves, along with their neighbour bits. This creates the ring of chunks just outside too
+     */
+    public void createAround(int cell, int radius) {
+        int chunkX = x(cell) >>> CHUNK_BITS;
+        int chunkY = y(cell) >>> CHUNK_BITS;
+        for (int cy = Math.max(0, chunkY - radius); cy <= Math.min(chunksY - 1, chunkY + radius); cy++)
+            for (int cx = Math.max(0, chunkX - radius); cx <= Math.min(chunksX - 1, chunkX + radius); cx++)
+                if (neighbours[cy * chunksX + cx] == null)
+                    computeNeighbours(cy * chunksX + cx);
+    }
+
+    // Forget every chunk, so the whole world is regenerated as it's touched
+    public void clear() {
+        Arrays.fill(cells, null);
+        Arrays.fill(occupancy, null);
+        Arrays.fill(fertility, null);
+        Arrays.fill(neighbours, null);
+        createdCount = 0;
+        foodCount = 0;
+        if (bitboard != null)
+            bitboard.clear();
+    }
+
+    public void setWall(int cell) {
+        int chunk = chunkOf(cell);
+        if (!create(chunk))
+            return;
+        int i = local(cell);
+        if ((cells[chunk][i] & FOOD) != 0)
+            foodCount--;
+        boolean wasWalkable = (cells[chunk][i] & WALKABLE) != 0;
+        cells[chunk][i] = 0;
+        fertility[chunk][i] = 0f;
+        changed(chunk);
+        if (bitboard != null) {
+            bitboard.setWalkable(cell, false);
+            bitboard.setFood(cell, false);
+        }
+        if (wasWalkable)
+            wallChanged(cell);
+    }
+
+    public void setFloor(int cell, float fertility) {
+        int chunk = chunkOf(cell);
+        if (!create(chunk))
+            throw new IndexOutOfBoundsException("Tile " + cell + " is outside the world");
+        int i = local(cell);
+        if ((cells[chunk][i] & FOOD) != 0)
+            foodCount--;
+        boolean wasWalkable = (cells[chunk][i] & WALKABLE) != 0;
+        cells[chunk][i] = WALKABLE;
+        this.fertility[chunk][i] = fertility;
+        changed(chunk);
+        if (bitboard != null) {
+            bitboard.setWalkable(cell, true);
+            bitboard.setFood(cell, false);
+        }
+        if (!wasWalkable)
+            wallChanged(cell);
+    }
+
+    // The tile next to a tile in a direction. Only meaningful if neighbours() says that tile is walkable
+    public int adjacent(int cell, int direction) {
+        switch (direction) {
+            case RIGHT: return cell + 1;
+            case LEFT: return cell - 1;
+            case UP: return cell - stride;
+            default: return cell + stride;
+        }
+    }
+
+    /**
+     * Which of the four tiles next to a tile are walkable: bit RIGHT, LEFT, UP or DOWN is set for each one that is.
+     * Tiles off the edge of the world are never walkable. To go through them,
+     * {@code for (int m = neighbours(cell); m != 0; m &= m - 1)} and take
+     * {@code adjacent(cell, Integer.numberOfTrailingZeros(m))}
+     */
+    public int neighbours(int cell) {
+        byte[] bits = neighbours[chunkOf(cell)];
+        if (bits == null) {
+            bits = computeNeighbours(chunkOf(cell));
+            if (bits == null)
+                return 0;
+        }
+        return bits[local(cell)];
+    }
+
+    // Work out the neighbour bits of every tile in a chunk, creating it and the chunks around it if need be
+    private byte[] computeNeighbours(int chunk) {
+        if (!create(chunk))
+            return null;
+        byte[] bits = new byte[CHUNK_AREA];
+        int origin = chunkOrigin(chunk);
+        for (int y = 0; y < CHUNK_SIZE; y++)
+            for (int x = 0; x < CHUNK_SIZE; x++)
+                bits[y << CHUNK_BITS | x] = walkableNeighbours(origin + (y << strideBits) + x);
+        neighbours[chunk] = bits;
+        return bits;
+    }
+
+    private byte walkableNeighbours(int cell) {
+        int x = x(cell);
+        int y = y(cell);
+        if (x >= width)
+            return 0;       // padding
+        int bits = 0;
+        if (x + 1 < width && walkable(cell + 1))
+            bits |= 1 << RIGHT;
+        if (x > 0 && walkable(cell - 1))
+            bits |= 1 << LEFT;
+        if (y > 0 && walkable(cell - stride))
+            bits |= 1 << UP;
+        if (y + 1 < height && walkable(cell + stride))
+            bits |= 1 << DOWN;
+        return (byte) bits;
+    }
+
+    // A tile has turned from wall to floor or back: update the bits of the tiles around it that have them
+    private void wallChanged(int cell) {
+        int x = x(cell);
+        int y = y(cell);
+        if (x + 1 < width)
+            refreshNeighbours(cell + 1);
+        if (x > 0)
+            refreshNeighbours(cell - 1);
+        if (y > 0)
+            refreshNeighbours(cell - stride);
+        if (y + 1 < height)
+            refreshNeighbours(cell + stride);
+    }
+
+    private void refreshNeighbours(int cell) {
+        byte[] bits = neighbours[chunkOf(cell)];
+        if (bits != null)
+            bits[local(cell)] = walkableNeighbours(cell);
+    }
+
+    // Flags of a tile, creating its chunk if need be
+    private byte flags(int cell) {
+        int chunk = chunkOf(cell);
+        byte[] flags = cells[chunk];
+        if (flags == null) {
+            if (!create(chunk))
+                return 0;
+            flags = cells[chunk];
+        }
+        return flags[local(cell)];
+    }
+
+    public boolean walkable(int cell) {
+        return (flags(cell) & WALKABLE) != 0;
+    }
+
+    public boolean walkable(int x, int y) {
+        return walkable(index(x, y));
+    }
+
+    public boolean hasFood(int cell) {
+        return (flags(cell) & FOOD) != 0;
+    }
+
+    public boolean hasFood(int x, int y) {
+        return hasFood(index(x, y));
+    }
+
+    // Walls never contain food, so growing food on one does nothing
+    public void growFood(int cell) {
+        if (walkable(cell) && !hasFood(cell)) {
+            int chunk = chunkOf(cell);
+            cells[chunk][local(cell)] |= FOOD;
+            foodCount++;
+            changed(chunk);
+            if (bitboard != null)
+                bitboard.setFood(cell, true);
+            if (foodListener != null)
+                foodListener.foodGrown(cell);
+        }
+    }
+
+    public void loseFood(int cell) {
+        if (hasFood(cell)) {
+            int chunk = chunkOf(cell);
+            cells[chunk][local(cell)] &= ~FOOD;
+            foodCount--;
+            changed(chunk);
+            if (bitboard != null)
+                bitboard.setFood(cell, false);
+            if (foodListener != null)
+                foodListener.foodLost(cell);
+        }
+    }
+
+    // Number of tiles with food on them
+    public int foodCount() {
+        return foodCount;
+    }
+
+    /**
+     * Start or stop keeping a Bitboard of the grid. Starting fills it in from every chunk created so far; after that
+     * it's kept up to date as tiles change, whether or not they're in created chunks
+     */
+    public void useBitboard(boolean use) {
+        if (!use) {
+            bitboard = null;
+        } else if (bitboard == null) {
+            bitboard = new Bitboard(this);
+            fillBitboard();
+        }
+    }
+
+    // The grid's bitboard, or null if it isn't keeping one
+    public Bitboard bitboard() {
+        return bitboard;
+    }
+
+    private void fillBitboard() {
+        bitboard.clear();
+        for (int i = 0; i < createdCount; i++) {
+            int chunk = created[i];
+            int origin = chunkOrigin(chunk);
+            int rows = Math.min(CHUNK_SIZE, height - y(origin));     // the last row of chunks hangs off the bottom
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < CHUNK_SIZE; x++) {
+                    int cell = origin + (y << strideBits) + x;
+                    int l = y << CHUNK_BITS | x;
+                    bitboard.setWalkable(cell, (cells[chunk][l] & WALKABLE) != 0);
+                    bitboard.setFood(cell, (cells[chunk][l] & FOOD) != 0);
+                    bitboard.setOccupied(cell, occupancy[chunk][l] > 0);
+                }
+            }
+        }
+    }
+
+    // Set the listener to notify of food changes, or null for none
+    public void setFoodListener(FoodListener foodListener) {
+        this.foodListener = foodListener;
+    }
+
+    public float fertility(int cell) {
+        int chunk = chunkOf(cell);
+        return create(chunk) ? fertility[chunk][local(cell)] : 0f;
+    }
+
+    // Number of agents present at this tile
+    public int agentCount(int cell) {
+        int chunk = chunkOf(cell);
+        return create(chunk) ? occupancy[chunk][local(cell)] : 0;
+    }
+
+    public int agentCount(int x, int y) {
+        return agentCount(index(x, y));
+    }
+
+    // Number of bytes writeTo() will write
+    public long snapshotSize() {
+        return Integer.BYTES + (long) createdCount * (Integer.BYTES + CHUNK_AREA * (Byte.BYTES + Float.BYTES));
+    }
+
+    /**
+     * Save the walls, food and fertility of every created chunk, in the order they were created. Agent counts aren't
+     * saved, as they follow from the agents
+     */
+    public void writeTo(SnapshotOutput out) throws IOException {
+        out.putInt(createdCount);
+        for (int i = 0; i < createdCount; i++) {
+            int chunk = created[i];
+            out.putInt(chunk);
+            out.put(cells[chunk], 0, CHUNK_AREA);
+            out.put(fertility[chunk], 0, CHUNK_AREA);
+        }
+    }
+
+    /**
+     * Restore tiles saved by writeTo() into a grid of the same size. Restored chunks aren't passed to the generator,
+     * but any other chunks will be generated as usual when touched. Every tile is left with no agents, and the food
+     * listener isn't told about any food, so should be rebuilt afterwards
+     */
+    public void readFrom(SnapshotInput in) throws IOException {
+        ChunkGenerator restoring = generator;
+        generator = null;
+        clear();
+        try {
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                int chunk = in.getInt();
+                if (chunk < 0 || chunk >= chunkCount() || !create(chunk))
+                    throw new IOException("Snapshot has a chunk outside the world");
+                in.get(cells[chunk], 0, CHUNK_AREA);
+                in.get(fertility[chunk], 0, CHUNK_AREA);
+                for (byte flags : cells[chunk])
+                    if ((flags & FOOD) != 0)
+                        foodCount++;
+            }
+        } finally {
+            generator = restoring;
+        }
+        if (bitboard != null)
+            fillBitboard();
+    }
+
+    public void addAgent(int cell) {
+        int chunk = chunkOf(cell);
+        if (!create(chunk))
+            throw new IndexOutOfBoundsException("Tile " + cell + " is outside the world");
+        if (occupancy[chunk][local(cell)]++ == 0 && bitboard != null)
+            bitboard.setOccupied(cell, true);
+        changed(chunk);
+    }
+
+    // Remove an agent from the tile (if they move away or die)
+    public void removeAgent(int cell) {
+        int chunk = chunkOf(cell);
+        if (occupancy[chunk] == null || occupancy[chunk][local(cell)] == 0)
+            throw new NoSuchElementException("Tried to remove an agent from a tile with no agents");
+        if (--occupancy[chunk][local(cell)] == 0 && bitboard != null)
+            bitboard.setOccupied(cell, false);
+        changed(chunk);
+    }
+}